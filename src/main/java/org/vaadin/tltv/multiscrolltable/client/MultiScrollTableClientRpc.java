@@ -0,0 +1,22 @@
+package org.vaadin.tltv.multiscrolltable.client;
+
+import com.vaadin.shared.communication.ClientRpc;
+
+/**
+ * Responses to the requests of the client that are not painted with the
+ * rows.
+ */
+public interface MultiScrollTableClientRpc extends ClientRpc {
+
+    /**
+     * Description of the row requested by the client. Description is null
+     * when the row doesn't have one.
+     */
+    void setRowDescription(String rowKey, String description);
+
+    /**
+     * Full value of the truncated cell requested by the client. Value is null
+     * when the row or the column is not there anymore.
+     */
+    void setFullValue(String rowKey, String columnPid, String value);
+}
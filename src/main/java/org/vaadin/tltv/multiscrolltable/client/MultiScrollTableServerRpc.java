@@ -1,13 +1,53 @@
 package org.vaadin.tltv.multiscrolltable.client;
 
+import java.util.Map;
+
+import com.vaadin.shared.annotations.Delayed;
 import com.vaadin.shared.communication.ServerRpc;
 
+/**
+ * Every row request carries a sequence number that grows with every request.
+ * Server paints the sequence number of the last handled request, so the
+ * client can recognize responses to outdated requests.
+ */
 public interface MultiScrollTableServerRpc extends ServerRpc {
 
-    void updateFirstRowIndex(Integer newFirstRowIndex);
+    void updateFirstRowIndex(Integer newFirstRowIndex, Integer sequence);
+
+    /**
+     * First row index changed and the client rendered the rows from its row
+     * cache. Doesn't need a response, so it's sent with the next request.
+     */
+    @Delayed(lastOnly = true)
+    void updateFirstRowIndexFromCache(Integer newFirstRowIndex,
+            Integer sequence);
 
-    void updateVisibleRowCount(Integer newVisibleRows);
+    /**
+     * Client measured the available space for the rows. Row height is the
+     * measured height of one row in pixels.
+     */
+    void updateVisibleRowCount(Integer newVisibleRows, Integer rowHeight,
+            Integer sequence);
 
     void updateFirstRowIndexAndVisibleRowCount(Integer newFirstRowIndex,
-            Integer newVisibleRows);
+            Integer newVisibleRows, Integer sequence);
+
+    /**
+     * Client measured new column widths. Widths are by the property id key of
+     * the column. Doesn't need a response, so it's sent with the next request.
+     */
+    @Delayed(lastOnly = true)
+    void updateColumnWidths(Map<String, Integer> columnWidths);
+
+    /**
+     * Pointer lingers on the row. Server responds with the description of the
+     * row through the client RPC.
+     */
+    void requestRowDescription(String rowKey);
+
+    /**
+     * User edits or expands a cell that was sent truncated. Server responds
+     * with the full value through the client RPC.
+     */
+    void requestFullValue(String rowKey, String columnPid);
 }
@@ -1,9 +1,30 @@
 package org.vaadin.tltv.multiscrolltable.client;
 
+import java.util.HashMap;
+import java.util.Map;
+
 import com.vaadin.shared.AbstractComponentState;
 
 public class MultiScrollTableState extends AbstractComponentState {
 
+    /* Rows are rendered as HTML strings instead of widgets when true. */
+    public boolean lightweightRows = false;
+
+    /* Maximum count of row requests per second while scrolling. */
+    public int maxScrollRequestsPerSecond = 10;
+
+    /* Column width model: widths in pixels by the property id key. */
+    public Map<String, Integer> columnWidths = new HashMap<String, Integer>();
+
+    /*
+     * Incremented when the server sets the column width model. Client replaces
+     * its model only when the version changes.
+     */
+    public int columnWidthsVersion = 0;
+
+    /* Rows have descriptions that the client requests on hover when true. */
+    public boolean rowDescriptions = false;
+
     // TODO Re-factor server->client communication to use shared state instead
     // of UIDL.
 }
@@ -16,12 +16,24 @@
 
 package org.vaadin.tltv.multiscrolltable.client.event;
 
+import java.util.Map;
+
 public interface MultiScrollTableEventHandler {
 
-    void onUpdateFirstRowIndex(Integer newFirstRowIndex);
+    void onUpdateFirstRowIndex(Integer newFirstRowIndex, Integer sequence);
+
+    void onUpdateFirstRowIndexFromCache(Integer newFirstRowIndex,
+            Integer sequence);
 
-    void onUpdateVisibleRowCount(Integer newVisibleRows);
+    void onUpdateVisibleRowCount(Integer newVisibleRows, Integer rowHeight,
+            Integer sequence);
 
     void onUpdateFirstRowIndexAndVisibleRowCount(Integer newFirstRowIndex,
-            Integer newVisibleRows);
+            Integer newVisibleRows, Integer sequence);
+
+    void onUpdateColumnWidths(Map<String, Integer> columnWidths);
+
+    void onRequestRowDescription(String rowKey);
+
+    void onRequestFullValue(String rowKey, String columnPid);
 }
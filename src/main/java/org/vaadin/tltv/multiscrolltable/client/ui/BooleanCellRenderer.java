@@ -0,0 +1,59 @@
+/*
+ * Copyright 2013 Tomi Virtanen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vaadin.tltv.multiscrolltable.client.ui;
+
+import com.google.gwt.dom.client.Element;
+import com.google.gwt.user.client.DOM;
+
+/**
+ * Renders "true" as a check mark and other values as empty.
+ */
+public class BooleanCellRenderer implements CellRenderer {
+
+    public static final String STYLE = "v-ct-boolean";
+
+    private static final String CHECK_MARK = "\u2714";
+
+    @Override
+    public void render(Element cellElement, String value) {
+        Element mark = cellElement.getFirstChildElement();
+        if (mark == null || !mark.getClassName().startsWith(STYLE)) {
+            cellElement.setInnerHTML("");
+            mark = DOM.createSpan();
+            cellElement.appendChild(mark);
+        }
+        boolean checked = isChecked(value);
+        mark.setClassName(STYLE + " " + STYLE + (checked ? "-true" : "-false"));
+        mark.setInnerText(checked ? CHECK_MARK : "");
+    }
+
+    @Override
+    public void renderHtml(StringBuilder html, String value) {
+        boolean checked = isChecked(value);
+        html.append("<span class=\"").append(STYLE).append(' ').append(STYLE)
+                .append(checked ? "-true" : "-false").append("\">")
+                .append(checked ? CHECK_MARK : "").append("</span>");
+    }
+
+    @Override
+    public String getText(String value) {
+        return CHECK_MARK;
+    }
+
+    private static boolean isChecked(String value) {
+        return "true".equals(value);
+    }
+}
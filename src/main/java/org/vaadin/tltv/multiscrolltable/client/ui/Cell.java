@@ -16,11 +16,6 @@
 
 package org.vaadin.tltv.multiscrolltable.client.ui;
 
-import com.google.gwt.core.client.GWT;
-import com.google.gwt.dom.client.Element;
-import com.google.gwt.dom.client.Style.Position;
-import com.google.gwt.dom.client.Style.WhiteSpace;
-import com.google.gwt.user.client.DOM;
 import com.google.gwt.user.client.ui.Composite;
 import com.google.gwt.user.client.ui.HTML;
 import com.vaadin.client.Util;
@@ -32,11 +27,18 @@ public class Cell extends Composite {
     private boolean editable;
     private int width;
     private int height;
-    private int minWidth;
+    private int minWidth = -1;
+    private int columnIndex = -1;
+    private String text = "";
 
     private Cell prev;
     private Cell next;
 
+    private CellRenderer renderer;
+
+    /* True when the server sent the value truncated. */
+    private boolean truncated;
+
     private Object value;
     private boolean valueChanged = true; // for internal purposes only
 
@@ -45,6 +47,14 @@ public class Cell extends Composite {
         setStylePrimaryName(primaryStyleName);
     }
 
+    public boolean isTruncated() {
+        return truncated;
+    }
+
+    public void setTruncated(boolean truncated) {
+        this.truncated = truncated;
+    }
+
     public boolean isEditable() {
         return editable;
     }
@@ -71,9 +81,28 @@ public class Cell extends Composite {
 
     public void setValue(Object value) {
         checkNewValue(value);
+        if (!valueChanged) {
+            return; // recycled cell with the same value
+        }
         this.value = value;
         formatValue();
-        calculateMinumumWidth();
+        minWidth = -1; // measured later by the ContentPanel
+    }
+
+    /**
+     * Set renderer for the value, or null to show the value as a text. The
+     * current value is rendered again when the renderer changes.
+     * 
+     * @param renderer
+     */
+    public void setRenderer(CellRenderer renderer) {
+        if (this.renderer == renderer) {
+            return;
+        }
+        this.renderer = renderer;
+        getWidget().getElement().setInnerHTML("");
+        formatValue();
+        minWidth = -1;
     }
 
     private void checkNewValue(Object newValue) {
@@ -83,32 +112,26 @@ public class Cell extends Composite {
     }
 
     protected void formatValue() {
+        if (renderer != null) {
+            String raw = (value != null) ? String.valueOf(value) : "";
+            text = renderer.getText(raw);
+            renderer.render(getWidget().getElement(), raw);
+            return;
+        }
+        text = (value != null) ? Util.escapeHTML(String.valueOf(value)) : Util
+                .escapeHTML(" ");
         if (getWidget() instanceof HTML) {
-            ((HTML) getWidget()).setText((value != null) ? Util
-                    .escapeHTML(String.valueOf(value)) : Util.escapeHTML(" "));
+            ((HTML) getWidget()).setText(text);
         }
     }
 
     /**
-     * Calculates the width needed for the content to be fully visible. But only
-     * if the value has changed. </br> Content element needs to be included in
-     * the DOM for correct result.
+     * Returns the text shown in this cell.
+     * 
+     * @return
      */
-    protected void calculateMinumumWidth() {
-        if (!valueChanged) {
-            return; // no need to calculate minwidth
-        }
-        Element measure = DOM.createElement("p");
-        measure.getStyle().setPosition(Position.ABSOLUTE);
-        measure.getStyle().setProperty("width", "auto");
-        measure.getStyle().setProperty("height", getHeight() + "px");
-        measure.getStyle().setWhiteSpace(WhiteSpace.NOWRAP);
-        measure.setInnerText(((HTML) getWidget()).getText());
-        measure.addClassName(primaryStyleName);
-        getWidget().getElement().getParentElement().appendChild(measure);
-        minWidth = measure.getClientWidth();
-        getWidget().getElement().getParentElement().removeChild(measure);
-        GWT.log("Cell.minWidth set to " + minWidth);
+    public String getText() {
+        return text;
     }
 
     /**
@@ -130,11 +153,39 @@ public class Cell extends Composite {
     }
 
     /**
-     * Get minimum width needed for the content to be fully visible.
+     * Set index of the column this cell belongs to. Cell width comes from the
+     * column style name.
+     * 
+     * @param columnIndex
+     */
+    public void setColumnIndex(int columnIndex) {
+        if (this.columnIndex == columnIndex) {
+            return;
+        }
+        if (this.columnIndex >= 0) {
+            removeStyleName(ColumnWidthStyle
+                    .getColumnStyleName(this.columnIndex));
+        }
+        this.columnIndex = columnIndex;
+        addStyleName(ColumnWidthStyle.getColumnStyleName(columnIndex));
+    }
+
+    /**
+     * Get minimum width needed for the content to be fully visible. Returns -1
+     * when the content has changed and is not measured yet.
      * 
      * @return
      */
     public int getMinWidth() {
         return minWidth;
     }
+
+    /**
+     * Set minimum width measured for the current content.
+     * 
+     * @param minWidth
+     */
+    public void setMinWidth(int minWidth) {
+        this.minWidth = minWidth;
+    }
 }
@@ -0,0 +1,57 @@
+/*
+ * Copyright 2013 Tomi Virtanen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vaadin.tltv.multiscrolltable.client.ui;
+
+import com.google.gwt.dom.client.Element;
+
+/**
+ * <b>CellRenderer</b> renders the values of one column. Values come from the
+ * server as compact raw strings, f.ex. "true" or "0.42", and the renderer
+ * writes them to the DOM directly. Renderers are registered by name to the
+ * {@link CellRendererRegistry} and set for a column on the server side.
+ */
+public interface CellRenderer {
+
+    /**
+     * Render the value into the cell element. Elements that an earlier call
+     * created into the same cell element should be reused.
+     * 
+     * @param cellElement
+     *            Element of the cell
+     * @param value
+     *            Raw value
+     */
+    void render(Element cellElement, String value);
+
+    /**
+     * Append the value as HTML. Used for the lightweight rows.
+     * 
+     * @param html
+     * @param value
+     *            Raw value
+     */
+    void renderHtml(StringBuilder html, String value);
+
+    /**
+     * Returns a text that is as wide as the rendered value. Used for
+     * measuring the column widths.
+     * 
+     * @param value
+     *            Raw value
+     * @return
+     */
+    String getText(String value);
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2013 Tomi Virtanen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vaadin.tltv.multiscrolltable.client.ui;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * <b>CellRendererRegistry</b> holds the cell renderers by name. Renderers for
+ * booleans and progress bars are registered by default. Custom renderers can
+ * be registered in the widgetset, f.ex. in an EntryPoint, before the tables
+ * are rendered.
+ */
+public class CellRendererRegistry {
+
+    /** Renders "true" as a check mark and "false" as empty. */
+    public static final String BOOLEAN = "boolean";
+
+    /** Renders a number between 0 and 1 as a progress bar. */
+    public static final String PROGRESS = "progress";
+
+    private static final Map<String, CellRenderer> renderers = new HashMap<String, CellRenderer>();
+
+    static {
+        register(BOOLEAN, new BooleanCellRenderer());
+        register(PROGRESS, new ProgressCellRenderer());
+    }
+
+    private CellRendererRegistry() {
+    }
+
+    /**
+     * Register a renderer by the name. Replaces an earlier renderer with the
+     * same name.
+     * 
+     * @param name
+     * @param renderer
+     */
+    public static void register(String name, CellRenderer renderer) {
+        renderers.put(name, renderer);
+    }
+
+    /**
+     * Returns the renderer registered by the name, or null.
+     * 
+     * @param name
+     * @return
+     */
+    public static CellRenderer get(String name) {
+        return renderers.get(name);
+    }
+}
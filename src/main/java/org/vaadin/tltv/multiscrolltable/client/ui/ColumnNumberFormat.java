@@ -0,0 +1,81 @@
+/*
+ * Copyright 2013 Tomi Virtanen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.vaadin.tltv.multiscrolltable.client.ui;
+
+import com.google.gwt.i18n.client.LocaleInfo;
+import com.google.gwt.i18n.client.NumberFormat;
+import com.google.gwt.i18n.client.constants.NumberConstants;
+
+/**
+ * <b>ColumnNumberFormat</b> formats raw numbers of one column by a
+ * DecimalFormat pattern and the separators of the server side formatter.
+ * NumberFormat writes the separators of the client locale, which are replaced
+ * by the server's ones, so the output is the same as the server would give.
+ */
+public class ColumnNumberFormat {
+
+    private final NumberFormat format;
+    private final char decimalSeparator;
+    private final char groupingSeparator;
+
+    private final char localeDecimalSeparator;
+    private final char localeGroupingSeparator;
+
+    public ColumnNumberFormat(String pattern, char decimalSeparator,
+            char groupingSeparator) {
+        format = NumberFormat.getFormat(pattern);
+        this.decimalSeparator = decimalSeparator;
+        this.groupingSeparator = groupingSeparator;
+        NumberConstants constants = LocaleInfo.getCurrentLocale()
+                .getNumberConstants();
+        localeDecimalSeparator = constants.decimalSeparator().charAt(0);
+        localeGroupingSeparator = constants.groupingSeparator().charAt(0);
+    }
+
+    /**
+     * Returns the raw number formatted. Value that is not a number is
+     * returned as is.
+     * 
+     * @param rawValue
+     *            Number as a string, f.ex. "1234567.89"
+     * @return
+     */
+    public String format(String rawValue) {
+        if (rawValue == null || rawValue.length() == 0) {
+            return rawValue;
+        }
+        double number;
+        try {
+            number = Double.parseDouble(rawValue);
+        } catch (NumberFormatException e) {
+            return rawValue;
+        }
+        String formatted = format.format(number);
+        StringBuilder sb = new StringBuilder(formatted.length());
+        for (int i = 0; i < formatted.length(); i++) {
+            char c = formatted.charAt(i);
+            if (c == localeDecimalSeparator) {
+                sb.append(decimalSeparator);
+            } else if (c == localeGroupingSeparator) {
+                sb.append(groupingSeparator);
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+}
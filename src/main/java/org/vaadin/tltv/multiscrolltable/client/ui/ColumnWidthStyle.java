@@ -0,0 +1,107 @@
+/*
+ * Copyright 2013 Tomi Virtanen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.vaadin.tltv.multiscrolltable.client.ui;
+
+import java.util.Arrays;
+
+import com.google.gwt.dom.client.StyleElement;
+import com.google.gwt.dom.client.StyleInjector;
+
+/**
+ * <b>ColumnWidthStyle</b> applies column widths of one panel through an
+ * injected style sheet instead of inline styles of every cell. Panel has its
+ * own style name and every cell has a column style name by its column index.
+ * Changing the widths rewrites only the style sheet.
+ */
+public class ColumnWidthStyle {
+
+    private static int instanceCounter = 0;
+
+    private final String styleName;
+    private StyleElement styleElement;
+    private int[] widths;
+
+    public ColumnWidthStyle() {
+        styleName = "v-ct-cw-" + (instanceCounter++);
+    }
+
+    /**
+     * Returns the style name for the panel where the widths are applied to.
+     * 
+     * @return
+     */
+    public String getStyleName() {
+        return styleName;
+    }
+
+    /**
+     * Returns the style name for cells in the given column.
+     * 
+     * @param columnIndex
+     * @return
+     */
+    public static String getColumnStyleName(int columnIndex) {
+        return "v-ct-col-" + columnIndex;
+    }
+
+    /**
+     * Sets column widths in pixels and the minimum width of the rows as a sum
+     * of them. Does nothing when the widths have not changed.
+     * 
+     * @param widths
+     */
+    public void setWidths(int[] widths) {
+        if (styleElement != null && Arrays.equals(this.widths, widths)) {
+            return;
+        }
+        this.widths = widths.clone();
+        StringBuilder css = new StringBuilder();
+        int minRowWidth = 0;
+        for (int i = 0; i < widths.length; i++) {
+            css.append('.').append(styleName).append(" .")
+                    .append(getColumnStyleName(i)).append("{width:")
+                    .append(widths[i]).append("px;}");
+            minRowWidth += widths[i];
+        }
+        css.append('.').append(styleName).append(" .v-ct-row{min-width:")
+                .append(minRowWidth).append("px;}");
+        if (styleElement == null) {
+            styleElement = StyleInjector.injectStylesheet(css.toString());
+        } else {
+            StyleInjector.setContents(styleElement, css.toString());
+        }
+    }
+
+    /**
+     * Injects the style sheet again with the latest widths after remove().
+     */
+    public void restore() {
+        if (styleElement == null && widths != null) {
+            setWidths(widths);
+        }
+    }
+
+    /**
+     * Removes the injected style sheet. The widths are kept for restore().
+     */
+    public void remove() {
+        if (styleElement != null) {
+            styleElement.removeFromParent();
+            styleElement = null;
+        }
+    }
+}
@@ -16,9 +16,12 @@
 
 package org.vaadin.tltv.multiscrolltable.client.ui;
 
-import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 
+import com.google.gwt.animation.client.AnimationScheduler;
+import com.google.gwt.animation.client.AnimationScheduler.AnimationCallback;
+import com.google.gwt.animation.client.AnimationScheduler.AnimationHandle;
 import com.google.gwt.core.client.GWT;
 import com.google.gwt.dom.client.Style.Overflow;
 import com.google.gwt.dom.client.Style.Position;
@@ -28,7 +31,6 @@ import com.google.gwt.event.dom.client.ScrollHandler;
 import com.google.gwt.user.client.DOM;
 import com.google.gwt.user.client.Event;
 import com.google.gwt.user.client.ui.FlowPanel;
-import com.google.gwt.user.client.ui.HTML;
 import com.google.gwt.user.client.ui.ScrollPanel;
 import com.google.gwt.user.client.ui.SimplePanel;
 import com.vaadin.client.UIDL;
@@ -46,6 +48,16 @@ public class ContentPanel extends FlowPanel implements ScrollableContent {
 
     private SimplePanel content;
     private FlowPanel contentForRows;
+    private final ColumnWidthStyle columnWidthStyle = new ColumnWidthStyle();
+
+    /* Rows of the update in progress, null when there is no update. */
+    private List<UIDL> pendingRows;
+
+    /*
+     * Maps logical scroll positions to the capped physical scroll range. All
+     * vertical scroll positions outside this class are logical.
+     */
+    private final ScrollScaler scrollScaler = new ScrollScaler();
 
     boolean visibleScrollBarY;
 
@@ -64,22 +76,61 @@ public class ContentPanel extends FlowPanel implements ScrollableContent {
     private int prevHorizontalScrollpos = 0;
     private int prevVerticalScrollpos = 0;
 
+    /* Scroll position when detached. Restored when attached again. */
+    private int detachedScrollLeft = -1;
+    private int detachedScrollTop = -1;
+
+    /* Mouse wheel delta that is not yet applied to the scroll position. */
+    private int pendingWheelDelta = 0;
+    private AnimationHandle wheelFrame;
+
+    private final AnimationCallback wheelCallback = new AnimationCallback() {
+        @Override
+        public void execute(double timestamp) {
+            wheelFrame = null;
+            int delta = pendingWheelDelta;
+            pendingWheelDelta = 0;
+            GWT.log("Scrolling over content panel:  " + delta);
+            scrollVertically(delta, true, false);
+        }
+    };
+
     private final ScrollHandler scrollhandler = new ScrollHandler() {
         @Override
         public void onScroll(ScrollEvent event) {
+            int offset = scrollScaler.getOffset();
+            if (visibleScrollBarY) {
+                int physical = scrollPanel.getVerticalScrollPosition();
+                scrollScaler.update(physical, getViewportHeight());
+                if (scrollScaler.isAtPhysicalEndOnly(physical,
+                        getViewportHeight())) {
+                    // Move the scroll bar off the end, so scrolling can
+                    // continue to the end of the logical content
+                    scrollPanel.setVerticalScrollPosition(scrollScaler
+                            .toPhysical(getScrollTop(), getViewportHeight()));
+                }
+            }
             int scrollTop = getScrollTop();
             verticalScrollPos = scrollTop;
+            if (offset != scrollScaler.getOffset()) {
+                // Scaled scroll position jumped, move the rows along
+                setInternalContentTop();
+            }
             boolean horScrolling = prevHorizontalScrollpos != scrollPanel
                     .getHorizontalScrollPosition();
             boolean verScrolling = prevVerticalScrollpos != scrollTop;
             prevHorizontalScrollpos = scrollPanel.getHorizontalScrollPosition();
             prevVerticalScrollpos = scrollTop;
             // Enable silent scrolling only if nextScrollEventIsSilent is
-            // true or content is scrolling only horizontally.
+            // true or content is scrolling only horizontally. Silent vertical
+            // scroll was requested by the ScrollCoordinator, which has already
+            // synchronized the other panels.
             boolean silent = nextScrollEventIsSilent
                     || (!verScrolling && horScrolling);
-            scroll(silent, scrollPanel.getHorizontalScrollPosition(),
-                    scrollTop, false);
+            if (!silent || horScrolling) {
+                scroll(silent, scrollPanel.getHorizontalScrollPosition(),
+                        scrollTop, false);
+            }
             nextScrollEventIsSilent = false;
         }
     };
@@ -93,7 +144,10 @@ public class ContentPanel extends FlowPanel implements ScrollableContent {
             ScrollHandlerWidget scrollHandlerWidget, boolean visibleScrollBarY) {
         rowContainer = rowFactory;
         this.scrollHandlerWidget = scrollHandlerWidget;
+        rowContainer.setValueDictionary(scrollHandlerWidget
+                .getValueDictionary());
         setStylePrimaryName("v-ct-content");
+        addStyleName(columnWidthStyle.getStyleName());
         initLayout(visibleScrollBarY);
     }
 
@@ -123,11 +177,6 @@ public class ContentPanel extends FlowPanel implements ScrollableContent {
 
         scrollPanel.addScrollHandler(scrollhandler);
 
-        // Add one element for measuring row height
-        HTML measure = new HTML();
-        measure.setStylePrimaryName("v-ct-row");
-        contentForRows.add(measure);
-
         rowContainer.setRelatedPanel(contentForRows);
         rowContainer.setScrollableContent(this);
 
@@ -137,18 +186,22 @@ public class ContentPanel extends FlowPanel implements ScrollableContent {
     @Override
     public void onBrowserEvent(Event event) {
         if (DOM.eventGetType(event) == Event.ONMOUSEWHEEL) {
-            GWT.log("Scrolling over content panel:  "
-                    + event.getMouseWheelVelocityY() * 15);
-            scrollVertically(event.getMouseWheelVelocityY() * 15, true, false);
+            // Wheel deltas are accumulated and applied once per frame
+            pendingWheelDelta += event.getMouseWheelVelocityY() * 15;
+            if (wheelFrame == null) {
+                wheelFrame = AnimationScheduler.get().requestAnimationFrame(
+                        wheelCallback);
+            }
         } else {
             super.onBrowserEvent(event);
         }
     }
 
     public int getMeasuredRowHeight() {
-        if (rowContainer.getRowHeight() < 0) {
-            rowContainer.setRowHeight(contentForRows.getWidget(0).getElement()
-                    .getClientHeight());
+        if (rowContainer.getRowHeight() <= 0) {
+            rowContainer.setRowHeight(StyleHeightMeasurer.get().getHeight(
+                    contentForRows.getElement(),
+                    StyleHeightMeasurer.ROW_STYLE));
         }
         return rowContainer.getRowHeight();
     }
@@ -157,87 +210,192 @@ public class ContentPanel extends FlowPanel implements ScrollableContent {
         rowContainer.setReConstruct(true);
 
         this.totalRowCount = totalRowCount;
-        // Measure row height before destroying measure element
         getMeasuredRowHeight();
 
         // Clear content
+        rowContainer.trimRows(0);
         clearContentAndSetReconstructFlagOn();
 
         updateContentHeight(totalRowCount);
     }
 
+    /**
+     * Marks the whole content to be updated by the next updateContent(List)
+     * call. Row widgets are kept in the DOM and recycled by the row container.
+     */
     public void clearContentAndSetReconstructFlagOn() {
-        while (contentForRows.getWidgetCount() > 0) {
-            contentForRows.remove(0);
-        }
-        rowContainer.getRows().clear();
         rowContainer.setReConstruct(true);
     }
 
-    public void updateContent(UIDL uidl) {
-        if (uidl == null) {
+    /**
+     * Update rows by the row UIDLs. Rows come either from the server or from
+     * the client side row cache. All rows are rendered at once, see
+     * RowRenderer for rendering in chunks.
+     * 
+     * @param rows
+     *            Row UIDLs in order, starting from the first row of the
+     *            content
+     */
+    public void updateContent(List<UIDL> rows) {
+        if (!beginUpdate(rows)) {
             return;
         }
+        for (int i = 0; i < rows.size(); i++) {
+            renderRow(i);
+        }
+        finishUpdate();
+    }
+
+    /**
+     * Start updating rows by the row UIDLs. Rows are placed to their
+     * positions, but their content is rendered only by the renderRow(int)
+     * calls. Update is completed by finishUpdate().
+     * 
+     * @param rows
+     *            Row UIDLs in order, starting from the first row of the
+     *            content
+     * @return false when there are no rows to render and the update is
+     *         already complete
+     */
+    public boolean beginUpdate(List<UIDL> rows) {
+        pendingRows = null;
+        if (rows == null) {
+            return false;
+        }
 
-        int rowCount = uidl.getChildCount();
         int columnCount = (headerContainer != null) ? headerContainer
                 .getColumnCount() : 0;
-        if (rowCount == 0 || columnCount == 0) {
-            return;
+        if (rows.isEmpty() || columnCount == 0) {
+            rowContainer.trimRows(0);
+            rowContainer.flush();
+            return false;
         }
 
-        for (int i = 0; i < rowCount; i++) {
-            UIDL rowUidl = uidl.getChildUIDL(i);
-
-            Row row = rowContainer.createRow(i, rowUidl);
-        }
+        pendingRows = rows;
+        rowContainer.reconcileRows(rows);
 
         updateRowContentTop();
         setInternalContentTop();
+        return true;
+    }
+
+    /**
+     * Render content of the row in the given index. Rows can be rendered in
+     * any order between beginUpdate(List) and finishUpdate() calls.
+     * 
+     * @param rowIndex
+     */
+    public void renderRow(int rowIndex) {
+        rowContainer.createRow(rowIndex, pendingRows.get(rowIndex));
+    }
+
+    /**
+     * Returns true when the rows are shown as they are rendered by
+     * renderRow(int). Otherwise the rows are shown only by finishUpdate().
+     * 
+     * @return
+     */
+    public boolean isRenderedByRow() {
+        return rowContainer.isRenderedByRow();
+    }
 
-        int[] widths = calculateMinWidthsForColumns(rowContainer.getRows());
-        // Update headerContainer column widths by the cell widths
-        if (headerContainer != null) {
-            widths = headerContainer.setColumnMinWidths(widths);
-            setColumnMinWidths(rowContainer.getRows(), widths);
+    /**
+     * Returns true when the row in the given index of the update is inside
+     * the viewport.
+     * 
+     * @param rowIndex
+     * @return
+     */
+    public boolean isRowVisible(int rowIndex) {
+        int rowHeight = rowContainer.getRowHeight();
+        int top = contentTop + (rowIndex * rowHeight);
+        int scrollTop = getScrollTop();
+        return (top + rowHeight) > scrollTop
+                && top < (scrollTop + getViewportHeight());
+    }
+
+    /**
+     * Complete the update started by beginUpdate(List) after all rows are
+     * rendered. Removes rows that are not needed anymore and updates the
+     * column widths.
+     */
+    public void finishUpdate() {
+        if (pendingRows == null) {
+            return;
         }
+        int rowCount = pendingRows.size();
+        pendingRows = null;
 
+        // Rows that are not needed anymore are recycled
+        rowContainer.trimRows(rowCount);
+        rowContainer.flush();
+
+        updateColumnWidths();
         rowContainer.setReConstruct(false);
     }
 
-    private int[] calculateMinWidthsForColumns(List<Row> rows) {
-        int[] widths = new int[headerContainer.getColumnCount()];
-        int index = 0;
-        for (Row r : rows) {
-            index = 0;
-            for (Cell c : r.getCells()) {
-                widths[index] = Math.max(widths[index], c.getMinWidth());
-                index++;
-            }
+    /**
+     * Update the column widths of the header and the rows. Called after the
+     * rows are updated, or alone when a column's width or expand ratio has
+     * changed.
+     */
+    public void updateColumnWidths() {
+        if (headerContainer == null) {
+            return;
         }
-        return widths;
-    }
-
-    private void setColumnMinWidths(List<Row> rows, int[] widths) {
-        int index = 0;
-        int w;
-        int minRowWidth = 0;
-        LinkedList<Cell> cells;
-        for (Row r : rows) {
-            index = 0;
-            minRowWidth = 0;
-            cells = r.getCells();
-            for (Cell c : cells) {
-                w = c.getOffsetWidth();
-                if (widths[index] != w) {
-                    w = widths[index];
-                    c.setWidth(w + "px");
+        // Layout phase: measure the cells and let the header read its
+        // widths before any width is written.
+        int[] widths;
+        boolean fixedLayout = headerContainer.isFixedLayout();
+        if (fixedLayout) {
+            // Widths don't depend on the content, no need to measure
+            widths = headerContainer.setFixedColumnWidths(scrollPanel
+                    .getElement().getClientWidth());
+        } else {
+            widths = null;
+            if (rowContainer.isReConstruct()) {
+                // Widths measured or restored earlier are used for the new
+                // content without measuring it.
+                widths = headerContainer
+                        .setColumnWidthsFromModel(scrollHandlerWidget
+                                .getColumnWidthModel());
+            }
+            if (widths == null) {
+                // Update headerContainer column widths by the cell widths
+                widths = rowContainer.calculateMinWidths(headerContainer
+                        .getColumnCount());
+                widths = headerContainer.setColumnMinWidths(widths);
+                Map<String, Integer> changedWidths = headerContainer
+                        .putColumnWidthsToModel(widths,
+                                scrollHandlerWidget.getColumnWidthModel());
+                if (!changedWidths.isEmpty()) {
+                    scrollHandlerWidget.columnWidthModelChanged(changedWidths);
                 }
-                minRowWidth += w;
-                index++;
             }
-            r.getElement().getStyle()
-                    .setProperty("minWidth", minRowWidth + "px");
+        }
+        setStyleDependentName("fixed", fixedLayout);
+        columnWidthStyle.setWidths(widths);
+    }
+
+    @Override
+    protected void onLoad() {
+        super.onLoad();
+        columnWidthStyle.restore();
+        restoreScrollPosition();
+    }
+
+    @Override
+    protected void onUnload() {
+        super.onUnload();
+        if (scrollPanel != null) {
+            detachedScrollLeft = getScrollLeft();
+            detachedScrollTop = getScrollTop();
+        }
+        columnWidthStyle.remove();
+        if (wheelFrame != null) {
+            wheelFrame.cancel();
+            wheelFrame = null;
+            pendingWheelDelta = 0;
         }
     }
 
@@ -249,8 +407,25 @@ public class ContentPanel extends FlowPanel implements ScrollableContent {
     }
 
     private void updateContentHeight(int totalRows) {
-        int contentHeight = totalRows * getMeasuredRowHeight();
-        content.setHeight(contentHeight + "px");
+        scrollScaler.setLogicalHeight((long) totalRows
+                * getMeasuredRowHeight());
+        content.setHeight(scrollScaler.getPhysicalHeight() + "px");
+    }
+
+    private int getViewportHeight() {
+        return scrollPanel.getElement().getClientHeight();
+    }
+
+    /*
+     * Sets the logical vertical scroll position to the scroll panel.
+     */
+    private void setVerticalScrollPosition(int verticalScrollPosition) {
+        int offset = scrollScaler.getOffset();
+        scrollPanel.setVerticalScrollPosition(scrollScaler.toPhysical(
+                verticalScrollPosition, getViewportHeight()));
+        if (offset != scrollScaler.getOffset()) {
+            setInternalContentTop();
+        }
     }
 
     public HeaderContainer getHeaderContainer() {
@@ -300,9 +475,13 @@ public class ContentPanel extends FlowPanel implements ScrollableContent {
     }
 
     private void setInternalContentTop() {
-        // Update content tops
-        contentForRows.getElement().getStyle()
-                .setTop(getCalculatedContentTop(), Unit.PX);
+        // Update content tops. Rows are in the physical content, which is
+        // shifted from the logical one by the scaler offset.
+        int top = getCalculatedContentTop();
+        if (visibleScrollBarY) {
+            top -= scrollScaler.getOffset();
+        }
+        contentForRows.getElement().getStyle().setTop(top, Unit.PX);
     }
 
     private void updateRowContentTop() {
@@ -319,15 +498,34 @@ public class ContentPanel extends FlowPanel implements ScrollableContent {
         }
     }
 
+    /*
+     * Browser resets the scroll position of a detached element. Rows are kept
+     * while detached, so the position is restored silently without
+     * requesting any rows.
+     */
+    private void restoreScrollPosition() {
+        if (scrollPanel == null || detachedScrollTop < 0) {
+            return;
+        }
+        if (detachedScrollLeft != getScrollLeft()) {
+            setScrollLeft(detachedScrollLeft);
+        }
+        if (detachedScrollTop != getScrollTop()) {
+            setScrollTop(detachedScrollTop, true);
+        }
+        detachedScrollLeft = -1;
+        detachedScrollTop = -1;
+    }
+
     public void resetVerticalScrollPosition() {
-        scrollPanel.setVerticalScrollPosition(verticalScrollPos);
+        setVerticalScrollPosition(verticalScrollPos);
     }
 
     @Override
     public void setScrollTop(int verticalScrollPosition) {
         verticalScrollPos = verticalScrollPosition;
         if (visibleScrollBarY) {
-            scrollPanel.setVerticalScrollPosition(verticalScrollPosition);
+            setVerticalScrollPosition(verticalScrollPosition);
         }
     }
 
@@ -337,10 +535,12 @@ public class ContentPanel extends FlowPanel implements ScrollableContent {
         verticalScrollPos = verticalScrollPosition;
         updateContentTop();
         if (!visibleScrollBarY) {
-            scroll(silentScroll, getScrollLeft(), getScrollTop(), false);
+            if (!silentScroll) {
+                scroll(false, getScrollLeft(), getScrollTop(), false);
+            }
         } else {
             // Launches a scroll event, which call scroll(...)
-            scrollPanel.setVerticalScrollPosition(verticalScrollPosition);
+            setVerticalScrollPosition(verticalScrollPosition);
         }
     }
 
@@ -386,7 +586,7 @@ public class ContentPanel extends FlowPanel implements ScrollableContent {
             updateContentTop();
             scroll(false, getScrollLeft(), getScrollTop(), forceReset);
         } else {
-            scrollPanel.setVerticalScrollPosition(verticalScrollPos);
+            setVerticalScrollPosition(verticalScrollPos);
         }
 
     }
@@ -397,7 +597,7 @@ public class ContentPanel extends FlowPanel implements ScrollableContent {
                 .isHorizontalScrollbarVisible();
         int sph = scrollPanel.getOffsetHeight()
                 - (hScrollbarVisible ? Util.getNativeScrollbarSize() : 0);
-        return sh - sph;
+        return scrollScaler.toLogicalMax(sh - sph);
     }
 
     @Override
@@ -427,7 +627,8 @@ public class ContentPanel extends FlowPanel implements ScrollableContent {
         if (!visibleScrollBarY) {
             p = verticalScrollPos;
         } else {
-            p = scrollPanel.getVerticalScrollPosition();
+            p = scrollScaler.toLogical(scrollPanel.getVerticalScrollPosition(),
+                    getViewportHeight());
         }
 
         int max = getMaxScrollPosition();
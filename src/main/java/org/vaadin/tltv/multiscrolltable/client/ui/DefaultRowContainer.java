@@ -16,9 +16,23 @@
 
 package org.vaadin.tltv.multiscrolltable.client.ui;
 
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
+import org.vaadin.tltv.multiscrolltable.client.ui.RowEventHandler.FullValueCallback;
+
+import com.google.gwt.dom.client.EventTarget;
 import com.google.gwt.dom.client.Style.Position;
+import com.google.gwt.event.dom.client.DoubleClickEvent;
+import com.google.gwt.event.dom.client.DoubleClickHandler;
+import com.google.gwt.event.dom.client.MouseOutEvent;
+import com.google.gwt.event.dom.client.MouseOutHandler;
+import com.google.gwt.event.dom.client.MouseOverEvent;
+import com.google.gwt.event.dom.client.MouseOverHandler;
 import com.google.gwt.user.client.ui.InsertPanel;
 import com.google.gwt.user.client.ui.InsertPanel.ForIsWidget;
 import com.vaadin.client.UIDL;
@@ -28,16 +42,57 @@ public class DefaultRowContainer implements RowContainer {
     protected InsertPanel.ForIsWidget relatedInsertablePanel;
     protected ScrollableContent scrollableContent;
     protected HeaderContainer headerContainer;
+    protected ValueDictionary valueDictionary;
 
     protected int rowHeight = -1;
 
     protected boolean reConstruct = true;
 
-    protected final LinkedList<Row> rows = new LinkedList<Row>();
+    protected final List<Row> rows = new ArrayList<Row>();
+
+    /*
+     * Rows and cells removed from the related panel. They are reused before
+     * creating any new widgets.
+     */
+    private final LinkedList<Row> rowPool = new LinkedList<Row>();
+    private final LinkedList<Cell> cellPool = new LinkedList<Cell>();
+
+    /* Receives the row hovers, or null when they are not listened. */
+    private final RowEventHandler rowEventHandler;
+
+    public DefaultRowContainer() {
+        this(null);
+    }
+
+    public DefaultRowContainer(RowEventHandler rowEventHandler) {
+        this.rowEventHandler = rowEventHandler;
+    }
+
+    @Override
+    public void reconcileRows(List<UIDL> rowUidls) {
+        Set<String> keys = new HashSet<String>();
+        for (UIDL rowUidl : rowUidls) {
+            keys.add(getRowKey(rowUidl));
+        }
+        // Rows of the items that are still shown keep their widgets. They
+        // stay in the same order, so a shifted window only inserts rows to
+        // the edge.
+        for (int i = rows.size() - 1; i >= 0; i--) {
+            String key = rows.get(i).getKey();
+            if (!keys.contains(key)) {
+                relatedInsertablePanel.remove(i);
+                rowPool.add(rows.remove(i));
+            }
+        }
+        // Place the rows, so their content can be rendered in any order
+        for (int i = 0; i < rowUidls.size(); i++) {
+            getRow(i, getRowKey(rowUidls.get(i)));
+        }
+    }
 
     @Override
     public Row createRow(int rowIndex, UIDL rowUidl) {
-        Row row = getRow(rowIndex);
+        Row row = getRow(rowIndex, getRowKey(rowUidl));
 
         int actualColIndex = 0;
         int startIndex = headerContainer.getFirstColIndexForRowsUidl();
@@ -47,35 +102,229 @@ public class DefaultRowContainer implements RowContainer {
 
             Cell cell = getCell(actualColIndex, row);
 
-            cell.setValue(columnUIDL.getChildString(0));
+            cell.setRenderer(headerContainer.getColumnRenderer(actualColIndex));
+            cell.setValue(headerContainer.formatValue(actualColIndex,
+                    valueDictionary.getValue(columnUIDL)));
+            cell.setTruncated(columnUIDL
+                    .getBooleanAttribute(VCustomScrollTable.ATTR_TRUNCATED));
         }
+        trimCells(row, actualColIndex);
+        row.setRendered(true);
         return row;
     }
 
+    /*
+     * Returns the existing cell in the target position, or inserts a recycled
+     * or a new one.
+     */
     protected Cell getCell(int colIndex, Row row) {
-        Cell cell = null;
-        if (isReConstruct()) {
-            cell = new Cell();
-            cell.setHeight(row.getHeight());
-            row.insert(cell, colIndex);
-        } else {
-            cell = row.getCell(colIndex);
+        if (colIndex < row.getWidgetCount()) {
+            return row.getCell(colIndex);
         }
+        Cell cell = cellPool.isEmpty() ? new Cell() : cellPool.removeFirst();
+        cell.setHeight(row.getHeight());
+        cell.setColumnIndex(colIndex);
+        row.insert(cell, colIndex);
         return cell;
     }
 
-    protected Row getRow(int rowIndex) {
-        if (isReConstruct()) {
-            Row row = new Row();
+    /*
+     * Removes the cells after the given cell count from the row.
+     */
+    protected void trimCells(Row row, int cellCount) {
+        for (int i = row.getWidgetCount() - 1; i >= cellCount; i--) {
+            cellPool.add(row.getCell(i));
+            row.remove(i);
+        }
+    }
+
+    /*
+     * Returns the row key from the row UIDL, or null when it has no key.
+     */
+    protected static String getRowKey(UIDL rowUidl) {
+        if (!rowUidl.hasAttribute(VCustomScrollTable.ATTR_KEY)) {
+            return null;
+        }
+        return rowUidl.getStringAttribute(VCustomScrollTable.ATTR_KEY);
+    }
+
+    /*
+     * Returns the existing row with the key in the target position. Existing
+     * row with the key in an other position is moved to the target position.
+     * Otherwise a recycled or a new row is inserted. Rows without a key are
+     * matched only by the position. Recycled rows and rows without a key are
+     * hidden until createRow(...) renders their content, so a cancelled
+     * chunked update doesn't leave them showing the previous item.
+     */
+    protected Row getRow(int rowIndex, String key) {
+        Row row = null;
+        if (rowIndex < rows.size()) {
+            row = rows.get(rowIndex);
+            if (key == null) {
+                row.setKey(key);
+                row.setRendered(false);
+                return row;
+            }
+            if (key.equals(row.getKey())) {
+                return row;
+            }
+        }
+        row = findRow(key, rowIndex + 1);
+        if (row != null) {
+            // Item was moved
+            int index = rows.indexOf(row);
+            relatedInsertablePanel.remove(index);
+            rows.remove(index);
+        } else if (rowPool.isEmpty()) {
+            row = new Row();
             row.setHeight(getRowHeight());
-            relatedInsertablePanel.insert(row, rowIndex);
             row.setPosition(Position.RELATIVE);
             // row.setTop(calculateRowTop(rowIndex,
             // scrollableContent.getScrollTop()));
-            rows.add(row);
-            return row;
+            if (rowEventHandler != null) {
+                addHoverHandlers(row);
+                addExpandHandler(row);
+            }
+        } else {
+            row = rowPool.removeFirst();
+            row.setRendered(false);
+        }
+        row.setKey(key);
+        relatedInsertablePanel.insert(row, rowIndex);
+        rows.add(rowIndex, row);
+        return row;
+    }
+
+    /*
+     * Row is recycled for other items, so the key is read on each hover.
+     */
+    private void addHoverHandlers(final Row row) {
+        row.addDomHandler(new MouseOverHandler() {
+            @Override
+            public void onMouseOver(MouseOverEvent event) {
+                rowEventHandler.onRowHover(row.getKey(), row.getElement());
+            }
+        }, MouseOverEvent.getType());
+        row.addDomHandler(new MouseOutHandler() {
+            @Override
+            public void onMouseOut(MouseOutEvent event) {
+                if (!TableUtil.isOrHasTarget(row.getElement(), event
+                        .getNativeEvent().getRelatedEventTarget())) {
+                    rowEventHandler.onRowHover(null, null);
+                }
+            }
+        }, MouseOutEvent.getType());
+    }
+
+    /*
+     * Double click on a truncated cell shows its full value.
+     */
+    private void addExpandHandler(final Row row) {
+        row.addDomHandler(new DoubleClickHandler() {
+            @Override
+            public void onDoubleClick(DoubleClickEvent event) {
+                EventTarget target = event.getNativeEvent().getEventTarget();
+                for (int i = 0; i < row.getWidgetCount(); i++) {
+                    Cell cell = row.getCell(i);
+                    if (TableUtil.isOrHasTarget(cell.getElement(), target)) {
+                        if (cell.isTruncated()) {
+                            expand(row, cell, i);
+                        }
+                        return;
+                    }
+                }
+            }
+        }, DoubleClickEvent.getType());
+    }
+
+    private void expand(final Row row, final Cell cell, final int colIndex) {
+        final String key = row.getKey();
+        rowEventHandler.requestFullValue(key,
+                headerContainer.getColumnPid(colIndex),
+                new FullValueCallback() {
+                    @Override
+                    public void onFullValue(String value) {
+                        // Row and cell may show an other item by now
+                        if (value != null && key.equals(row.getKey())
+                                && row.getWidgetIndex(cell) == colIndex) {
+                            cell.setValue(value);
+                            cell.setTruncated(false);
+                        }
+                    }
+                });
+    }
+
+    /*
+     * Returns the row with the key after the given position, or null.
+     */
+    private Row findRow(String key, int fromIndex) {
+        if (key == null) {
+            return null;
+        }
+        for (int i = fromIndex; i < rows.size(); i++) {
+            if (key.equals(rows.get(i).getKey())) {
+                return rows.get(i);
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void trimRows(int rowCount) {
+        for (int i = rows.size() - 1; i >= rowCount; i--) {
+            relatedInsertablePanel.remove(i);
+            rowPool.add(rows.remove(i));
+        }
+    }
+
+    @Override
+    public void flush() {
+        // Rows are already up to date
+    }
+
+    @Override
+    public boolean isRenderedByRow() {
+        return true;
+    }
+
+    @Override
+    public int[] calculateMinWidths(int columnCount) {
+        measureCells();
+        int[] widths = new int[columnCount];
+        int index = 0;
+        for (Row r : rows) {
+            index = 0;
+            for (Cell c : r.getCells()) {
+                widths[index] = Math.max(widths[index], c.getMinWidth());
+                index++;
+            }
+        }
+        return widths;
+    }
+
+    /*
+     * Measures all cells with changed content in one batch.
+     */
+    private void measureCells() {
+        List<Cell> unmeasured = new ArrayList<Cell>();
+        Set<String> texts = new HashSet<String>();
+        for (Row r : rows) {
+            for (Cell c : r.getCells()) {
+                if (c.getMinWidth() < 0) {
+                    unmeasured.add(c);
+                    texts.add(c.getText());
+                }
+            }
+        }
+        if (unmeasured.isEmpty()) {
+            return;
+        }
+        Map<String, Integer> widths = TextWidthMeasurer.get().measure(
+                rows.get(0).getElement().getParentElement(),
+                Cell.primaryStyleName, getRowHeight(), texts);
+        for (Cell c : unmeasured) {
+            c.setMinWidth(widths.get(c.getText()));
         }
-        return (Row) relatedInsertablePanel.getWidget(rowIndex);
     }
 
     protected int calculateRowTop(int rowIndex, int baseContentTop) {
@@ -93,7 +342,7 @@ public class DefaultRowContainer implements RowContainer {
     }
 
     @Override
-    public LinkedList<Row> getRows() {
+    public List<Row> getRows() {
         return rows;
     }
 
@@ -121,4 +370,9 @@ public class DefaultRowContainer implements RowContainer {
     public void setHeaderContainer(HeaderContainer headerContainer) {
         this.headerContainer = headerContainer;
     }
+
+    @Override
+    public void setValueDictionary(ValueDictionary valueDictionary) {
+        this.valueDictionary = valueDictionary;
+    }
 }
@@ -16,6 +16,8 @@
 
 package org.vaadin.tltv.multiscrolltable.client.ui;
 
+import java.util.Map;
+
 public interface HeaderContainer {
 
     /**
@@ -39,6 +41,45 @@ public interface HeaderContainer {
      */
     int getColumnCount();
 
+    /**
+     * Returns the property id key of the column in the given index, or null
+     * if there is no such column.
+     * 
+     * @param columnIndex
+     * @return
+     */
+    String getColumnPid(int columnIndex);
+
+    /**
+     * Returns true when values of the column in the given index can't be
+     * edited.
+     * 
+     * @param columnIndex
+     * @return
+     */
+    boolean isColumnReadonly(int columnIndex);
+
+    /**
+     * Returns the value from the row UIDL formatted for the column in the
+     * given index. Numbers of the columns with a number pattern are sent raw
+     * and formatted here, other values are returned as is.
+     * 
+     * @param columnIndex
+     * @param value
+     * @return
+     */
+    String formatValue(int columnIndex, String value);
+
+    /**
+     * Returns the renderer of the column in the given index, or null when the
+     * values are shown as text. Values of the columns with a renderer are
+     * raw and can't be edited.
+     * 
+     * @param columnIndex
+     * @return
+     */
+    CellRenderer getColumnRenderer(int columnIndex);
+
     /**
      * Set column widths.
      * 
@@ -46,4 +87,43 @@ public interface HeaderContainer {
      * @return Adjusted widths
      */
     int[] setColumnMinWidths(int[] widths);
+
+    /**
+     * Returns true when every column has a fixed width or an expand ratio, so
+     * the column widths don't depend on the content.
+     * 
+     * @return
+     */
+    boolean isFixedLayout();
+
+    /**
+     * Set column widths by the fixed widths and the expand ratios. Expanding
+     * columns share the space left over from the available width.
+     * 
+     * @param availableWidth
+     * @return Calculated widths
+     */
+    int[] setFixedColumnWidths(int availableWidth);
+
+    /**
+     * Set column widths from the column width model. Nothing is set when any
+     * of the columns is missing from the model.
+     * 
+     * @param model
+     *            Column widths by the property id key
+     * @return Widths that were set, or null
+     */
+    int[] setColumnWidthsFromModel(Map<String, Integer> model);
+
+    /**
+     * Put the given column widths to the column width model.
+     * 
+     * @param widths
+     * @param model
+     *            Column widths by the property id key
+     * @return Widths that changed in the model by the property id key, empty
+     *         when the model didn't change
+     */
+    Map<String, Integer> putColumnWidthsToModel(int[] widths,
+            Map<String, Integer> model);
 }
@@ -16,13 +16,16 @@
 
 package org.vaadin.tltv.multiscrolltable.client.ui;
 
+import java.util.HashMap;
+import java.util.Map;
+
+import com.google.gwt.core.client.GWT;
 import com.google.gwt.dom.client.Style.Position;
 import com.google.gwt.dom.client.Style.Unit;
 import com.google.gwt.dom.client.Style.VerticalAlign;
 import com.google.gwt.user.client.ui.FlexTable;
 import com.google.gwt.user.client.ui.FlexTable.FlexCellFormatter;
 import com.google.gwt.user.client.ui.FlowPanel;
-import com.google.gwt.user.client.ui.HTML;
 import com.google.gwt.user.client.ui.Label;
 import com.google.gwt.user.client.ui.SimplePanel;
 import com.vaadin.client.UIDL;
@@ -32,9 +35,6 @@ public class HeaderPanel extends SimplePanel implements HeaderContainer,
 
     private final FlexTable content;
 
-    private int groupHeight = 0;
-    private int columnHeight = 0;
-
     private int levels = 0;
     private int columnCount = 0;
     private int firstColIndexForRowsUidl = 0;
@@ -45,9 +45,21 @@ public class HeaderPanel extends SimplePanel implements HeaderContainer,
      */
     private boolean reConstruct;
 
+    /* Header cells by the keys given by the server. */
+    private final Map<String, ColumnPanel> headerCells = new HashMap<String, ColumnPanel>();
+
+    /* Column panels in the last row by their column index. */
+    private ColumnPanel[] leafPanels = new ColumnPanel[0];
+
     private int[] columnWidths;
     private int calculatedWidth = 0;
 
+    /*
+     * Height of the laid out header, or -1 when the captions or the widths
+     * have changed after it was read.
+     */
+    private int layoutHeight = -1;
+
     public HeaderPanel() {
         setStylePrimaryName("v-ct-col-headers");
         content = new FlexTable();
@@ -56,207 +68,245 @@ public class HeaderPanel extends SimplePanel implements HeaderContainer,
         content.getElement().getStyle().setPosition(Position.RELATIVE);
         content.getElement().getStyle().setVerticalAlign(VerticalAlign.BOTTOM);
 
-        // Add element for measuring default height
-        HTML measure = new HTML();
-        measure.setStylePrimaryName("v-ct-header-group");
-        content.setWidget(0, 0, measure);
-        measure = new HTML();
-        measure.setStylePrimaryName("v-ct-header");
-        content.setWidget(0, 1, measure);
-
         setWidget(content);
     }
 
-    private int getMeasuredGroupHeight() {
-        if (groupHeight <= 0) {
-            groupHeight = content.getWidget(0, 0).getElement()
-                    .getClientHeight();
-        }
-        return groupHeight;
-    }
-
-    private int getMeasuredColumnHeight() {
-        if (columnHeight <= 0) {
-            columnHeight = content.getWidget(0, 1).getElement()
-                    .getClientHeight();
-        }
-        return columnHeight;
-    }
-
     public void initContent() {
         reConstruct = true;
         calculatedWidth = 0;
-
-        // Measure group default heights before removing measure element
-        getMeasuredGroupHeight();
-        getMeasuredColumnHeight();
+        layoutHeight = -1;
 
         // Clear content
         content.clear();
         while (content.getRowCount() > 0) {
             content.removeRow(0);
         }
+        headerCells.clear();
+        leafPanels = new ColumnPanel[0];
         levels = 0;
+        columnCount = 0;
     }
 
+    /**
+     * Builds the header grid from the scroll content UIDL, or only updates the
+     * captions when the grid is already built. Header cells are in row-major
+     * order and carry their row and spans, so every cell is written once.
+     * 
+     * @param uidl
+     */
     public void updateContent(UIDL uidl) {
         if (uidl == null) {
             return;
         }
 
         if (uidl.getTag().equals(VCustomScrollTable.TAG_SCROLLCONTENT)) {
-            int childcount = uidl.getChildCount();
-            if (childcount > 0) {
-                ColumnPanel prev = null;
-                for (int i = 0; i < childcount; i++) {
-                    prev = updateContentByGroupUidl(uidl.getChildUIDL(i), 0, i,
-                            prev, null);
+            if (reConstruct) {
+                buildContent(uidl);
+            } else {
+                for (int i = 0; i < uidl.getChildCount(); i++) {
+                    updateHeaderCell(uidl.getChildUIDL(i));
                 }
             }
-
-        }
-
-        if (reConstruct) {
-            columnCount = 0;
-            if (content.getRowCount() > 0) {
-                columnCount = content.getCellCount(content.getRowCount() - 1);
-            }
         }
         reConstruct = false;
+        layoutHeight = -1;
     }
 
-    private ColumnPanel updateContentByGroupUidl(UIDL uidl, int level,
-            int index, ColumnPanel prevColumn, ColumnPanel group) {
-        if (uidl == null) {
-            return null;
-        }
+    private void buildContent(UIDL uidl) {
+        levels = uidl.getIntAttribute(VCustomScrollTable.ATTR_LEVELS);
+        columnCount = uidl.getIntAttribute(VCustomScrollTable.ATTR_COLS);
+        leafPanels = new ColumnPanel[columnCount];
 
-        String caption = uidl
-                .getStringAttribute(VCustomScrollTable.ATTR_CAPTION);
-        ColumnPanel p = getColumnPanel(level, index, prevColumn, group);
-        updateGroupElement(p);
-        p.getLabel().setText(caption);
-
-        boolean updateColSpan = false;
-        int childs = uidl.getChildCount();
-        if (childs <= 0) {
-            return p;
-        }
-        int cellCount = p.getFirstChildIndex();
-        if (reConstruct) {
-            // When reconstructing, p.getFirstChildIndex() value is not updated
-            // yet.
-            try {
-                cellCount = content.getCellCount(level + 1);
-            } catch (IndexOutOfBoundsException e) {
-                cellCount = 0;
-            }
+        // Rows covered completely by row spans have no cells, so all rows
+        // are inserted first.
+        for (int row = 0; row < levels; row++) {
+            content.insertRow(row);
         }
-        ColumnPanel prev = null;
-        for (int i = 0; i < childs; i++) {
-            UIDL subUidl = uidl.getChildUIDL(i);
-            if (subUidl.getTag().equals(VCustomScrollTable.TAG_COLUMN)) {
-                prev = updateContentByColumnUidl(subUidl, level + 1, cellCount
-                        + i, prev, p);
-                updateColSpan = reConstruct;
-            } else if (subUidl.getTag().equals(
-                    VCustomScrollTable.TAG_COLUMNGROUP)) {
-                prev = updateContentByGroupUidl(subUidl, level + 1, i, prev, p);
+        FlexCellFormatter formatter = content.getFlexCellFormatter();
+        int[] cellsInRow = new int[levels];
+        for (int i = 0; i < uidl.getChildCount(); i++) {
+            UIDL cellUidl = uidl.getChildUIDL(i);
+            int row = cellUidl.getIntAttribute(VCustomScrollTable.ATTR_ROW);
+            int cell = cellsInRow[row]++;
+            ColumnPanel p = createColumnPanel(cellUidl);
+            content.setWidget(row, cell, p);
+            if (cellUidl.hasAttribute(VCustomScrollTable.ATTR_COLSPAN)) {
+                formatter.setColSpan(row, cell, cellUidl
+                        .getIntAttribute(VCustomScrollTable.ATTR_COLSPAN));
+            }
+            if (cellUidl.hasAttribute(VCustomScrollTable.ATTR_ROWSPAN)) {
+                formatter.setRowSpan(row, cell, cellUidl
+                        .getIntAttribute(VCustomScrollTable.ATTR_ROWSPAN));
+            }
+            if (isColumnUidl(cellUidl)) {
+                leafPanels[cellUidl
+                        .getIntAttribute(VCustomScrollTable.ATTR_OFFSET)] = p;
             }
         }
-        if (updateColSpan) {
-            // This needs to be called only for the "leaf" panels.
-            p.setColSpan(childs);
-        }
-        return p;
     }
 
-    private ColumnPanel updateContentByColumnUidl(UIDL uidl, int level,
-            int index, ColumnPanel prev, ColumnPanel group) {
+    private boolean isColumnUidl(UIDL uidl) {
+        return uidl.getTag().equals(VCustomScrollTable.TAG_COLUMN);
+    }
 
-        String caption = uidl
-                .getStringAttribute(VCustomScrollTable.ATTR_CAPTION);
-        ColumnPanel p = getColumnPanel(level, index, prev, group);
-        updateColumnElement(p);
-        p.getLabel().setText(caption);
-        return p;
+    private static ColumnNumberFormat createNumberFormat(UIDL uidl) {
+        String pattern = uidl
+                .getStringAttribute(VCustomScrollTable.ATTR_NUMBER_PATTERN);
+        char decimalSeparator = uidl.getStringAttribute(
+                VCustomScrollTable.ATTR_DECIMAL_SEPARATOR).charAt(0);
+        char groupingSeparator = uidl.getStringAttribute(
+                VCustomScrollTable.ATTR_GROUPING_SEPARATOR).charAt(0);
+        return new ColumnNumberFormat(pattern, decimalSeparator,
+                groupingSeparator);
     }
 
-    /**
-     * Get existing ColumnPanel or create and insert a new one.
-     * 
-     * @param level
-     * @param index
-     * @param prev
-     *            Previous ColumnPanel in the same row
-     * @param group
-     * @return
-     */
-    private ColumnPanel getColumnPanel(int level, int index, ColumnPanel prev,
-            ColumnPanel group) {
-        addRow(level);
-        addCell(level, index);
-
-        ColumnPanel p;
-        if (reConstruct) {
-            p = createColumnElement(prev, level, index);
-            if (group != null) {
-                p.setParentPanel(group);
+    private static CellRenderer getRenderer(String name) {
+        CellRenderer renderer = CellRendererRegistry.get(name);
+        if (renderer == null) {
+            GWT.log("No cell renderer registered with name '" + name
+                    + "', values are shown as text.");
+        }
+        return renderer;
+    }
+
+    private ColumnPanel createColumnPanel(UIDL uidl) {
+        ColumnPanel p = new ColumnPanel();
+        if (isColumnUidl(uidl)) {
+            p.setStylePrimaryName("v-ct-header");
+            p.pid = uidl.getStringAttribute(VCustomScrollTable.ATTR_PID);
+            p.setReadonly(uidl
+                    .getBooleanAttribute(VCustomScrollTable.ATTR_READONLY));
+            if (uidl.hasAttribute(VCustomScrollTable.ATTR_WIDTH)) {
+                p.fixedWidth = uidl
+                        .getIntAttribute(VCustomScrollTable.ATTR_WIDTH);
+            }
+            if (uidl.hasAttribute(VCustomScrollTable.ATTR_EXPAND_RATIO)) {
+                p.expandRatio = uidl.getFloatAttribute(
+                        VCustomScrollTable.ATTR_EXPAND_RATIO);
+            }
+            if (uidl.hasAttribute(VCustomScrollTable.ATTR_NUMBER_PATTERN)) {
+                p.numberFormat = createNumberFormat(uidl);
+            }
+            if (uidl.hasAttribute(VCustomScrollTable.ATTR_RENDERER)) {
+                p.renderer = getRenderer(uidl
+                        .getStringAttribute(VCustomScrollTable.ATTR_RENDERER));
             }
-            content.setWidget(level, index, p);
         } else {
-            p = (ColumnPanel) content.getWidget(level, index);
+            p.setStylePrimaryName("v-ct-header-group");
         }
+        p.getLabel().setText(
+                uidl.getStringAttribute(VCustomScrollTable.ATTR_CAPTION));
+        p.setKey(uidl.getStringAttribute(VCustomScrollTable.ATTR_KEY));
+        headerCells.put(p.getKey(), p);
         return p;
     }
 
     /**
-     * Add a new row to the grid when its not already existing.
+     * Removes and inserts the leaf header cells by the column diff UIDL. Used
+     * for the default scroll content, which has a single column group, when
+     * the visible columns change without a change in the header structure.
+     * Diff contains the new colspan of the group.
+     * 
+     * @param uidl
      */
-    private void addRow(int rowIndex) {
-        if (reConstruct) {
-            if (rowIndex >= content.getRowCount()) {
-                content.insertRow(rowIndex);
-                levels++;
+    public void applyColumnDiff(UIDL uidl) {
+        int leafRow = levels - 1;
+        if (leafRow < 1) {
+            return;
+        }
+
+        // Removed indexes are in descending order
+        String[] removed = uidl
+                .getStringArrayAttribute(VCustomScrollTable.ATTR_REMOVED_COLS);
+        for (String index : removed) {
+            int i = Integer.parseInt(index);
+            headerCells.remove(((ColumnPanel) content.getWidget(leafRow, i))
+                    .getKey());
+            content.removeCell(leafRow, i);
+        }
+        // Inserted indexes are in ascending order
+        for (int i = 0; i < uidl.getChildCount(); i++) {
+            UIDL cellUidl = uidl.getChildUIDL(i);
+            if (isColumnUidl(cellUidl)) {
+                int index = cellUidl
+                        .getIntAttribute(VCustomScrollTable.ATTR_INDEX);
+                content.insertCell(leafRow, index);
+                content.setWidget(leafRow, index, createColumnPanel(cellUidl));
+            } else {
+                ColumnPanel group = headerCells.get(cellUidl
+                        .getStringAttribute(VCustomScrollTable.ATTR_KEY));
+                if (group != null) {
+                    group.setColSpan(cellUidl
+                            .getIntAttribute(VCustomScrollTable.ATTR_COLSPAN));
+                }
             }
         }
+        columnCount = content.getCellCount(leafRow);
+        leafPanels = new ColumnPanel[columnCount];
+        for (int i = 0; i < columnCount; i++) {
+            leafPanels[i] = (ColumnPanel) content.getWidget(leafRow, i);
+        }
+        layoutHeight = -1;
     }
 
     /**
-     * Add a new cell to the row if its not already existing.
+     * Updates caption, readonly state, width and expand ratio of a single
+     * header cell. Returns false when this panel doesn't contain the cell.
      * 
-     * @param rowIndex
-     * @param cellIndex
+     * @param uidl
+     * @return
      */
-    private void addCell(int rowIndex, int cellIndex) {
-        if (reConstruct) {
-            if (cellIndex >= content.getCellCount(rowIndex)) {
-                content.insertCell(rowIndex, cellIndex);
-            }
+    public boolean updateHeaderCell(UIDL uidl) {
+        ColumnPanel p = headerCells.get(uidl
+                .getStringAttribute(VCustomScrollTable.ATTR_KEY));
+        if (p == null) {
+            return false;
         }
-    }
-
-    private ColumnPanel createColumnElement(ColumnPanel prevColumn,
-            int rowIndex, int colIndex) {
-        ColumnPanel p = new ColumnPanel(prevColumn, rowIndex, colIndex);
-        p.setStylePrimaryName("v-ct-header-group");
-        return p;
-    }
-
-    private void updateGroupElement(ColumnPanel p) {
-        if (reConstruct) {
-            p.setStylePrimaryName("v-ct-header-group");
+        p.getLabel().setText(
+                uidl.getStringAttribute(VCustomScrollTable.ATTR_CAPTION));
+        layoutHeight = -1;
+        if (uidl.hasAttribute(VCustomScrollTable.ATTR_READONLY)) {
+            p.setReadonly(uidl
+                    .getBooleanAttribute(VCustomScrollTable.ATTR_READONLY));
         }
-    }
-
-    private void updateColumnElement(ColumnPanel p) {
-        if (reConstruct) {
-            p.setStylePrimaryName("v-ct-header");
+        if (uidl.hasAttribute(VCustomScrollTable.ATTR_WIDTH)) {
+            p.fixedWidth = uidl.getIntAttribute(VCustomScrollTable.ATTR_WIDTH);
         }
+        if (uidl.hasAttribute(VCustomScrollTable.ATTR_EXPAND_RATIO)) {
+            p.expandRatio = uidl
+                    .getFloatAttribute(VCustomScrollTable.ATTR_EXPAND_RATIO);
+        }
+        return true;
     }
 
+    /**
+     * Returns height of the laid out header. Height is read once after the
+     * captions or the column widths change, as wrapped captions make it
+     * differ from the theme defaults. Before the header is laid out, the
+     * height is estimated from the default heights of the group and the column
+     * header cells.
+     * 
+     * @return
+     */
     public int getCalculatedHeight() {
-        return getElement().getClientHeight();
+        if (levels == 0) {
+            return 0;
+        }
+        if (layoutHeight < 0 && isAttached()) {
+            // Height set by setHeight(int) is cleared to read the natural one
+            content.setHeight("");
+            int height = content.getOffsetHeight();
+            layoutHeight = (height > 0) ? height : -1;
+        }
+        if (layoutHeight > 0) {
+            return layoutHeight;
+        }
+        StyleHeightMeasurer measurer = StyleHeightMeasurer.get();
+        int groupHeight = measurer.getHeight(getElement(),
+                StyleHeightMeasurer.HEADER_GROUP_STYLE);
+        int columnHeight = measurer.getHeight(getElement(),
+                StyleHeightMeasurer.HEADER_STYLE);
+        return ((levels - 1) * groupHeight) + columnHeight;
     }
 
     public int getCalculatedWidth() {
@@ -274,18 +324,19 @@ public class HeaderPanel extends SimplePanel implements HeaderContainer,
 
     public class ColumnPanel extends FlowPanel {
 
-        int rowIndex;
-        int colIndex;
         final Label label;
-        ColumnPanel parentPanel;
-        ColumnPanel prevPanel;
-        int colspan = 0;
-        int firstChildIndex = 0;
-
-        public ColumnPanel(ColumnPanel prevPanel, int rowIndex, int colIndex) {
-            this.prevPanel = prevPanel;
-            this.rowIndex = rowIndex;
-            this.colIndex = colIndex;
+        String key;
+        String pid;
+        boolean readonly;
+        int fixedWidth = -1;
+        float expandRatio = 0;
+        // Formats raw numbers of the column, null when values are formatted
+        // on the server.
+        ColumnNumberFormat numberFormat;
+        // Renders raw values of the column, null for text values.
+        CellRenderer renderer;
+
+        public ColumnPanel() {
             label = createLabel();
             add(label);
         }
@@ -301,42 +352,36 @@ public class HeaderPanel extends SimplePanel implements HeaderContainer,
             return label;
         }
 
-        public void setParentPanel(ColumnPanel parentPanel) {
-            this.parentPanel = parentPanel;
+        public String getKey() {
+            return key;
         }
 
-        public ColumnPanel getParentPanel() {
-            return parentPanel;
+        public void setKey(String key) {
+            this.key = key;
         }
 
-        public void setColSpan(int colspan) {
-            this.colspan += colspan;
-            firstChildIndex = colIndex;
-            if (prevPanel != null) {
-                firstChildIndex = prevPanel.getFirstChildIndex()
-                        + prevPanel.getColSpan();
-            }
-            ((FlexCellFormatter) content.getCellFormatter()).setColSpan(
-                    rowIndex, colIndex, this.colspan);
-            if (getParentPanel() != null) {
-                getParentPanel().setColSpan(this.colspan);
-            }
+        /**
+         * Returns true when the width of this column doesn't depend on the
+         * content.
+         * 
+         * @return
+         */
+        public boolean isFixedLayout() {
+            return fixedWidth >= 0 || expandRatio > 0;
         }
 
-        public int getColSpan() {
-            return colspan;
+        public void setReadonly(boolean readonly) {
+            this.readonly = readonly;
+            setStyleDependentName("readonly", readonly);
         }
 
         /**
-         * Returns first index of next row's cell which parent this element is.
-         * Returned index is valid only, when colspans are set correctly.
+         * Sets colspan of the table cell containing this panel.
+         * 
+         * @param colspan
          */
-        public int getFirstChildIndex() {
-            return firstChildIndex;
-        }
-
-        public ColumnPanel getPrevPanel() {
-            return prevPanel;
+        public void setColSpan(int colspan) {
+            getElement().getParentElement().setPropertyInt("colSpan", colspan);
         }
     }
 
@@ -345,6 +390,31 @@ public class HeaderPanel extends SimplePanel implements HeaderContainer,
         return columnCount;
     }
 
+    @Override
+    public String getColumnPid(int columnIndex) {
+        if (columnIndex < 0 || columnIndex >= leafPanels.length) {
+            return null;
+        }
+        return leafPanels[columnIndex].pid;
+    }
+
+    @Override
+    public boolean isColumnReadonly(int columnIndex) {
+        if (columnIndex < 0 || columnIndex >= leafPanels.length) {
+            return true;
+        }
+        return leafPanels[columnIndex].readonly
+                || leafPanels[columnIndex].renderer != null;
+    }
+
+    @Override
+    public CellRenderer getColumnRenderer(int columnIndex) {
+        if (columnIndex < 0 || columnIndex >= leafPanels.length) {
+            return null;
+        }
+        return leafPanels[columnIndex].renderer;
+    }
+
     @Override
     public int getScrollLeft() {
         // TODO Auto-generated method stub
@@ -387,15 +457,115 @@ public class HeaderPanel extends SimplePanel implements HeaderContainer,
             }
             return widths;
         }
+        // Read all current widths before writing any
+        int[] currentWidths = new int[widths.length];
+        for (int i = 0; i < widths.length; i++) {
+            currentWidths[i] = leafPanels[i].getOffsetWidth();
+        }
         for (int i = 0; i < widths.length; i++) {
-            ColumnPanel col = (ColumnPanel) content.getWidget(levels - 1, i);
-            int w = col.getOffsetWidth();
-            if (widths[i] > w) {
-                col.setWidth(widths[i] + "px");
+            if (widths[i] > currentWidths[i]) {
+                leafPanels[i].setWidth(widths[i] + "px");
             } else {
-                widths[i] = w;
+                widths[i] = currentWidths[i];
             }
         }
+        layoutHeight = -1;
         return widths;
     }
+
+    @Override
+    public boolean isFixedLayout() {
+        if (leafPanels.length == 0) {
+            return false;
+        }
+        for (ColumnPanel p : leafPanels) {
+            if (!p.isFixedLayout()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int[] setFixedColumnWidths(int availableWidth) {
+        int[] widths = new int[leafPanels.length];
+        int usedWidth = 0;
+        float totalRatio = 0;
+        // Read caption widths of the expanding columns before writing any
+        for (int i = 0; i < leafPanels.length; i++) {
+            ColumnPanel p = leafPanels[i];
+            if (p.fixedWidth >= 0) {
+                widths[i] = p.fixedWidth;
+            } else {
+                widths[i] = p.getLabel().getOffsetWidth();
+                totalRatio += p.expandRatio;
+            }
+            usedWidth += widths[i];
+        }
+        int space = availableWidth - usedWidth;
+        if (space > 0 && totalRatio > 0) {
+            int spaceLeft = space;
+            int lastExpanding = -1;
+            for (int i = 0; i < leafPanels.length; i++) {
+                ColumnPanel p = leafPanels[i];
+                if (p.fixedWidth < 0) {
+                    int extra = (int) (space * p.expandRatio / totalRatio);
+                    widths[i] += extra;
+                    spaceLeft -= extra;
+                    lastExpanding = i;
+                }
+            }
+            // Rounding error goes to the last expanding column
+            widths[lastExpanding] += spaceLeft;
+        }
+        for (int i = 0; i < leafPanels.length; i++) {
+            leafPanels[i].setWidth(widths[i] + "px");
+        }
+        layoutHeight = -1;
+        return widths;
+    }
+
+    @Override
+    public String formatValue(int columnIndex, String value) {
+        if (columnIndex < 0 || columnIndex >= leafPanels.length
+                || leafPanels[columnIndex].numberFormat == null) {
+            return value;
+        }
+        return leafPanels[columnIndex].numberFormat.format(value);
+    }
+
+    @Override
+    public int[] setColumnWidthsFromModel(Map<String, Integer> model) {
+        if (leafPanels.length == 0) {
+            return null;
+        }
+        int[] widths = new int[leafPanels.length];
+        for (int i = 0; i < leafPanels.length; i++) {
+            Integer width = model.get(leafPanels[i].pid);
+            if (width == null) {
+                return null;
+            }
+            widths[i] = width;
+        }
+        for (int i = 0; i < leafPanels.length; i++) {
+            leafPanels[i].setWidth(widths[i] + "px");
+        }
+        layoutHeight = -1;
+        return widths;
+    }
+
+    @Override
+    public Map<String, Integer> putColumnWidthsToModel(int[] widths,
+            Map<String, Integer> model) {
+        Map<String, Integer> changed = new HashMap<String, Integer>();
+        for (int i = 0; i < leafPanels.length && i < widths.length; i++) {
+            String pid = leafPanels[i].pid;
+            Integer width = Integer.valueOf(widths[i]);
+            if (pid != null && !width.equals(model.get(pid))) {
+                model.put(pid, width);
+                changed.put(pid, width);
+            }
+        }
+        return changed;
+    }
 }
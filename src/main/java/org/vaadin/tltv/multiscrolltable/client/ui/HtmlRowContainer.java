@@ -0,0 +1,516 @@
+/*
+ * Copyright 2013 Tomi Virtanen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.vaadin.tltv.multiscrolltable.client.ui;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.vaadin.tltv.multiscrolltable.client.ui.RowEventHandler.FullValueCallback;
+
+import com.google.gwt.dom.client.Document;
+import com.google.gwt.dom.client.Element;
+import com.google.gwt.dom.client.InputElement;
+import com.google.gwt.event.dom.client.ClickEvent;
+import com.google.gwt.event.dom.client.ClickHandler;
+import com.google.gwt.event.dom.client.DoubleClickEvent;
+import com.google.gwt.event.dom.client.DoubleClickHandler;
+import com.google.gwt.event.dom.client.KeyCodes;
+import com.google.gwt.event.dom.client.KeyDownEvent;
+import com.google.gwt.event.dom.client.KeyDownHandler;
+import com.google.gwt.event.dom.client.MouseOutEvent;
+import com.google.gwt.event.dom.client.MouseOutHandler;
+import com.google.gwt.event.dom.client.MouseOverEvent;
+import com.google.gwt.event.dom.client.MouseOverHandler;
+import com.google.gwt.user.client.DOM;
+import com.google.gwt.user.client.ui.HTML;
+import com.google.gwt.user.client.ui.InsertPanel.ForIsWidget;
+import com.vaadin.client.UIDL;
+import com.vaadin.client.Util;
+
+/**
+ * <b>HtmlRowContainer</b> is a lightweight RowContainer that doesn't create a
+ * widget for each row or cell. All rows are rendered as one HTML string into
+ * a detached element that replaces the previous one in a single DOM
+ * operation. Clicks, double clicks and key presses are handled by one
+ * delegated handler on the block of rows, so expand/collapse and editing work
+ * without any event sinking on the cells.
+ */
+public class HtmlRowContainer implements RowContainer {
+
+    private static final String ATTR_ROW = "data-row";
+    private static final String ATTR_COL = "data-col";
+    private static final String EXPAND_STYLE = "v-ct-expand";
+
+    /* Indentation for each hierarchy level in pixels. */
+    private static final int INDENT = 16;
+
+    /* Decoded data of a single row. */
+    private static class RowData {
+        int index;
+        String key;
+        int depth;
+        boolean childrenAllowed;
+        boolean open;
+        String[] values = new String[0];
+        // True for the values that the server sent truncated
+        boolean[] truncated = new boolean[0];
+    }
+
+    private final RowEventHandler rowEventHandler;
+
+    private ForIsWidget relatedInsertablePanel;
+    private ScrollableContent scrollableContent;
+    private HeaderContainer headerContainer;
+    private ValueDictionary valueDictionary;
+
+    private int rowHeight = -1;
+    private boolean reConstruct = true;
+
+    /* Wrapper for the rendered block of rows. */
+    private final HTML block = new HTML();
+
+    private final List<RowData> rows = new ArrayList<RowData>();
+    private int rowCount = 0;
+    private String renderedHtml;
+
+    /* Currently open cell editor */
+    private InputElement editor;
+    private Element editedCell;
+    private int editedRow;
+    private int editedCol;
+    // Value in the editor when the editing started
+    private String editedValue;
+
+    public HtmlRowContainer(RowEventHandler rowEventHandler) {
+        this.rowEventHandler = rowEventHandler;
+        block.setStylePrimaryName("v-ct-rows");
+        block.addDomHandler(new ClickHandler() {
+            @Override
+            public void onClick(ClickEvent event) {
+                handleClick(Element.as(event.getNativeEvent()
+                        .getEventTarget()));
+            }
+        }, ClickEvent.getType());
+        block.addDomHandler(new DoubleClickHandler() {
+            @Override
+            public void onDoubleClick(DoubleClickEvent event) {
+                handleDoubleClick(Element.as(event.getNativeEvent()
+                        .getEventTarget()));
+            }
+        }, DoubleClickEvent.getType());
+        block.addDomHandler(new KeyDownHandler() {
+            @Override
+            public void onKeyDown(KeyDownEvent event) {
+                if (editor == null) {
+                    return;
+                }
+                if (event.getNativeKeyCode() == KeyCodes.KEY_ENTER) {
+                    commitEdit();
+                } else if (event.getNativeKeyCode() == KeyCodes.KEY_ESCAPE) {
+                    cancelEdit();
+                }
+            }
+        }, KeyDownEvent.getType());
+        block.addDomHandler(new MouseOverHandler() {
+            @Override
+            public void onMouseOver(MouseOverEvent event) {
+                handleHover(Element.as(event.getNativeEvent()
+                        .getEventTarget()));
+            }
+        }, MouseOverEvent.getType());
+        block.addDomHandler(new MouseOutHandler() {
+            @Override
+            public void onMouseOut(MouseOutEvent event) {
+                if (!TableUtil.isOrHasTarget(block.getElement(), event
+                        .getNativeEvent().getRelatedEventTarget())) {
+                    rowEventHandler.onRowHover(null, null);
+                }
+            }
+        }, MouseOutEvent.getType());
+    }
+
+    @Override
+    public Row createRow(int rowIndex, UIDL rowUidl) {
+        while (rows.size() <= rowIndex) {
+            rows.add(new RowData());
+        }
+        RowData row = rows.get(rowIndex);
+        row.index = rowUidl.getIntAttribute(VCustomScrollTable.ATTR_INDEX);
+        row.key = rowUidl.getStringAttribute(VCustomScrollTable.ATTR_KEY);
+        row.depth = rowUidl.getIntAttribute(VCustomScrollTable.ATTR_DEPTH);
+        row.childrenAllowed = rowUidl
+                .getBooleanAttribute(VCustomScrollTable.ATTR_CHILDRENS_ALLOWED);
+        row.open = rowUidl.getBooleanAttribute(VCustomScrollTable.ATTR_OPEN);
+
+        int columnCount = headerContainer.getColumnCount();
+        if (row.values.length != columnCount) {
+            row.values = new String[columnCount];
+            row.truncated = new boolean[columnCount];
+        }
+        int startIndex = headerContainer.getFirstColIndexForRowsUidl();
+        for (int i = 0; i < columnCount; i++) {
+            UIDL valueUidl = rowUidl.getChildUIDL(startIndex + i);
+            String value = valueDictionary.getValue(valueUidl);
+            row.values[i] = (value != null) ? headerContainer.formatValue(i,
+                    value) : "";
+            row.truncated[i] = valueUidl
+                    .getBooleanAttribute(VCustomScrollTable.ATTR_TRUNCATED);
+        }
+        return null;
+    }
+
+    @Override
+    public void trimRows(int rowCount) {
+        this.rowCount = Math.min(rowCount, rows.size());
+    }
+
+    @Override
+    public void reconcileRows(List<UIDL> rowUidls) {
+        // All rows are written at once in flush()
+    }
+
+    @Override
+    public void flush() {
+        String html = buildHtml();
+        if (html.equals(renderedHtml)) {
+            return; // nothing has changed
+        }
+        // Open editor is dropped with the replaced content
+        editor = null;
+        editedCell = null;
+        Element content = DOM.createDiv();
+        content.setInnerHTML(html);
+        Element old = block.getElement().getFirstChildElement();
+        if (old != null) {
+            block.getElement().replaceChild(content, old);
+        } else {
+            block.getElement().appendChild(content);
+        }
+        renderedHtml = html;
+    }
+
+    @Override
+    public boolean isRenderedByRow() {
+        return false;
+    }
+
+    private String buildHtml() {
+        StringBuilder html = new StringBuilder();
+        boolean hierarchical = isHierarchyColumnInPanel();
+        for (int r = 0; r < rowCount; r++) {
+            RowData row = rows.get(r);
+            html.append("<div class=\"v-ct-row\" ").append(ATTR_ROW)
+                    .append("=\"").append(r)
+                    .append("\" style=\"position:relative;height:")
+                    .append(rowHeight).append("px;\">");
+            for (int c = 0; c < row.values.length; c++) {
+                html.append("<div class=\"").append(Cell.primaryStyleName)
+                        .append(' ')
+                        .append(ColumnWidthStyle.getColumnStyleName(c))
+                        .append("\" ").append(ATTR_COL).append("=\"")
+                        .append(c).append("\">");
+                if (c == 0 && hierarchical) {
+                    appendExpandToggle(html, row);
+                }
+                CellRenderer renderer = headerContainer.getColumnRenderer(c);
+                if (renderer != null) {
+                    renderer.renderHtml(html, row.values[c]);
+                } else {
+                    html.append(Util.escapeHTML(row.values[c]));
+                }
+                html.append("</div>");
+            }
+            html.append("</div>");
+        }
+        return html.toString();
+    }
+
+    private void appendExpandToggle(StringBuilder html, RowData row) {
+        html.append("<span class=\"").append(EXPAND_STYLE);
+        if (row.childrenAllowed) {
+            html.append(' ').append(EXPAND_STYLE)
+                    .append(row.open ? "-open" : "-closed");
+        }
+        html.append("\" style=\"display:inline-block;width:").append(INDENT)
+                .append("px;margin-left:").append(row.depth * INDENT)
+                .append("px;\"></span>");
+    }
+
+    /*
+     * Hierarchy is shown in the first column of the first scroll content.
+     */
+    private boolean isHierarchyColumnInPanel() {
+        return headerContainer.getFirstColIndexForRowsUidl() == 0;
+    }
+
+    private void handleClick(Element target) {
+        if (editor != null && !editor.equals(target)) {
+            commitEdit();
+        }
+        if (target.getClassName() == null
+                || !target.getClassName().contains(EXPAND_STYLE + "-")) {
+            return;
+        }
+        int r = getIndexAttribute(target, ATTR_ROW);
+        if (r >= 0 && r < rowCount && rows.get(r).childrenAllowed) {
+            rowEventHandler.onToggleCollapsed(rows.get(r).index);
+        }
+    }
+
+    private void handleHover(Element target) {
+        Element rowElement = findParentWithAttribute(target, ATTR_ROW);
+        int r = (rowElement != null) ? Integer.parseInt(rowElement
+                .getAttribute(ATTR_ROW)) : -1;
+        if (r >= 0 && r < rowCount) {
+            rowEventHandler.onRowHover(rows.get(r).key, rowElement);
+        } else {
+            rowEventHandler.onRowHover(null, null);
+        }
+    }
+
+    private void handleDoubleClick(Element target) {
+        Element cell = findParentWithAttribute(target, ATTR_COL);
+        if (cell == null || editor != null) {
+            return;
+        }
+        int c = getIndexAttribute(cell, ATTR_COL);
+        int r = getIndexAttribute(cell, ATTR_ROW);
+        if (r < 0 || r >= rowCount) {
+            return;
+        }
+        if (!headerContainer.isColumnReadonly(c)) {
+            startEdit(cell, r, c);
+        } else if (rows.get(r).truncated[c]) {
+            expand(r, c);
+        }
+    }
+
+    private void startEdit(Element cell, int r, int c) {
+        RowData row = rows.get(r);
+        editor = Document.get().createTextInputElement();
+        editedValue = row.values[c];
+        editor.setValue(editedValue);
+        editor.getStyle().setProperty("width", "100%");
+        editor.getStyle().setProperty("boxSizing", "border-box");
+        editedCell = cell;
+        editedRow = r;
+        editedCol = c;
+        cell.setInnerHTML("");
+        cell.appendChild(editor);
+        if (row.truncated[c]) {
+            // Truncated value is not edited, wait for the full value
+            editor.setDisabled(true);
+            requestFullEditorValue(row, c);
+            return;
+        }
+        editor.focus();
+        editor.select();
+    }
+
+    private void requestFullEditorValue(RowData row, final int c) {
+        final InputElement waitingEditor = editor;
+        rowEventHandler.requestFullValue(row.key,
+                headerContainer.getColumnPid(c), new FullValueCallback() {
+                    @Override
+                    public void onFullValue(String value) {
+                        if (editor != waitingEditor) {
+                            return; // editing has ended already
+                        }
+                        if (value == null) {
+                            cancelEdit();
+                            return;
+                        }
+                        editedValue = value;
+                        editor.setValue(value);
+                        editor.setDisabled(false);
+                        editor.focus();
+                        editor.select();
+                    }
+                });
+    }
+
+    /*
+     * Shows the full value of a truncated read only cell.
+     */
+    private void expand(int r, final int c) {
+        final RowData row = rows.get(r);
+        final String key = row.key;
+        rowEventHandler.requestFullValue(key, headerContainer.getColumnPid(c),
+                new FullValueCallback() {
+                    @Override
+                    public void onFullValue(String value) {
+                        // Row data may be reused for an other item by now
+                        if (value != null && key.equals(row.key)
+                                && c < row.values.length) {
+                            row.values[c] = value;
+                            row.truncated[c] = false;
+                            flush();
+                        }
+                    }
+                });
+    }
+
+    private void commitEdit() {
+        if (editor == null) {
+            return;
+        }
+        if (editor.isDisabled()) {
+            cancelEdit(); // full value hasn't arrived yet
+            return;
+        }
+        String newValue = editor.getValue();
+        RowData row = rows.get(editedRow);
+        int col = editedCol;
+        boolean changed = !newValue.equals(editedValue);
+        if (changed) {
+            row.values[col] = newValue;
+            row.truncated[col] = false;
+        }
+        closeEditor();
+        if (changed) {
+            rowEventHandler.onValueChange(headerContainer.getColumnPid(col),
+                    row.index, newValue);
+        }
+    }
+
+    private void cancelEdit() {
+        if (editor != null) {
+            closeEditor();
+        }
+    }
+
+    /*
+     * Removes the editor and renders the rows again from the row data, so the
+     * cell gets back its expand toggle and renderer markup.
+     */
+    private void closeEditor() {
+        editor = null;
+        editedCell = null;
+        renderedHtml = null;
+        flush();
+    }
+
+    /*
+     * Returns the index in the given attribute of the element or the closest
+     * parent element having the attribute, or -1.
+     */
+    private int getIndexAttribute(Element element, String attribute) {
+        Element e = findParentWithAttribute(element, attribute);
+        if (e == null) {
+            return -1;
+        }
+        return Integer.parseInt(e.getAttribute(attribute));
+    }
+
+    private Element findParentWithAttribute(Element element, String attribute) {
+        Element e = element;
+        while (e != null && !e.equals(block.getElement())) {
+            if (e.hasAttribute(attribute)) {
+                return e;
+            }
+            e = e.getParentElement();
+        }
+        return null;
+    }
+
+    /*
+     * Returns the text that is measured for the value of the column.
+     */
+    private String getText(int columnIndex, String value) {
+        CellRenderer renderer = headerContainer.getColumnRenderer(columnIndex);
+        return (renderer != null) ? renderer.getText(value) : value;
+    }
+
+    @Override
+    public int[] calculateMinWidths(int columnCount) {
+        int[] widths = new int[columnCount];
+        if (rowCount == 0) {
+            return widths;
+        }
+        Set<String> texts = new HashSet<String>();
+        for (int r = 0; r < rowCount; r++) {
+            RowData row = rows.get(r);
+            for (int c = 0; c < row.values.length; c++) {
+                texts.add(getText(c, row.values[c]));
+            }
+        }
+        Map<String, Integer> measured = TextWidthMeasurer.get().measure(
+                block.getElement(), Cell.primaryStyleName, rowHeight, texts);
+        boolean hierarchical = isHierarchyColumnInPanel();
+        for (int r = 0; r < rowCount; r++) {
+            RowData row = rows.get(r);
+            for (int c = 0; c < columnCount && c < row.values.length; c++) {
+                int w = measured.get(getText(c, row.values[c]));
+                if (c == 0 && hierarchical) {
+                    w += (row.depth + 1) * INDENT;
+                }
+                widths[c] = Math.max(widths[c], w);
+            }
+        }
+        return widths;
+    }
+
+    @Override
+    public void setReConstruct(boolean reConstruct) {
+        this.reConstruct = reConstruct;
+    }
+
+    @Override
+    public boolean isReConstruct() {
+        return reConstruct;
+    }
+
+    @Override
+    public List<Row> getRows() {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public void setRelatedPanel(ForIsWidget relatedInsertablePanel) {
+        this.relatedInsertablePanel = relatedInsertablePanel;
+        relatedInsertablePanel.add(block);
+    }
+
+    @Override
+    public void setScrollableContent(ScrollableContent scrollableContent) {
+        this.scrollableContent = scrollableContent;
+    }
+
+    @Override
+    public void setRowHeight(int rowHeight) {
+        this.rowHeight = rowHeight;
+    }
+
+    @Override
+    public int getRowHeight() {
+        return rowHeight;
+    }
+
+    @Override
+    public void setHeaderContainer(HeaderContainer headerContainer) {
+        this.headerContainer = headerContainer;
+    }
+
+    @Override
+    public void setValueDictionary(ValueDictionary valueDictionary) {
+        this.valueDictionary = valueDictionary;
+    }
+}
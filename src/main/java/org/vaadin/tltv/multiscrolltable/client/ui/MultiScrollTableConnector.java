@@ -16,6 +16,9 @@
 
 package org.vaadin.tltv.multiscrolltable.client.ui;
 
+import java.util.Map;
+
+import org.vaadin.tltv.multiscrolltable.client.MultiScrollTableClientRpc;
 import org.vaadin.tltv.multiscrolltable.client.MultiScrollTableServerRpc;
 import org.vaadin.tltv.multiscrolltable.client.MultiScrollTableState;
 import org.vaadin.tltv.multiscrolltable.client.event.MultiScrollTableEventHandler;
@@ -36,6 +39,21 @@ public class MultiScrollTableConnector extends LegacyConnector implements
     protected void init() {
         super.init();
         getWidget().setEventHandler(eventHandler);
+        registerRpc(MultiScrollTableClientRpc.class,
+                new MultiScrollTableClientRpc() {
+
+                    @Override
+                    public void setRowDescription(String rowKey,
+                            String description) {
+                        getWidget().setRowDescription(rowKey, description);
+                    }
+
+                    @Override
+                    public void setFullValue(String rowKey, String columnPid,
+                            String value) {
+                        getWidget().setFullValue(rowKey, columnPid, value);
+                    }
+                });
     }
 
     @Override
@@ -57,6 +75,12 @@ public class MultiScrollTableConnector extends LegacyConnector implements
     @Override
     public void onStateChanged(StateChangeEvent stateChangeEvent) {
         super.onStateChanged(stateChangeEvent);
+        getWidget().setLightweightRows(getState().lightweightRows);
+        getWidget().setMaxScrollRequestsPerSecond(
+                getState().maxScrollRequestsPerSecond);
+        getWidget().setColumnWidthModel(getState().columnWidthsVersion,
+                getState().columnWidths);
+        getWidget().setRowDescriptionsEnabled(getState().rowDescriptions);
     }
 
     @Override
@@ -95,23 +119,51 @@ public class MultiScrollTableConnector extends LegacyConnector implements
     private final MultiScrollTableEventHandler eventHandler = new MultiScrollTableEventHandler() {
 
         @Override
-        public void onUpdateVisibleRowCount(Integer newVisibleRows) {
+        public void onUpdateVisibleRowCount(Integer newVisibleRows,
+                Integer rowHeight, Integer sequence) {
             getRpcProxy(MultiScrollTableServerRpc.class).updateVisibleRowCount(
-                    newVisibleRows);
+                    newVisibleRows, rowHeight, sequence);
         }
 
         @Override
         public void onUpdateFirstRowIndexAndVisibleRowCount(
-                Integer newFirstRowIndex, Integer newVisibleRows) {
+                Integer newFirstRowIndex, Integer newVisibleRows,
+                Integer sequence) {
             getRpcProxy(MultiScrollTableServerRpc.class)
                     .updateFirstRowIndexAndVisibleRowCount(newFirstRowIndex,
-                            newVisibleRows);
+                            newVisibleRows, sequence);
+        }
+
+        @Override
+        public void onUpdateColumnWidths(Map<String, Integer> columnWidths) {
+            getRpcProxy(MultiScrollTableServerRpc.class).updateColumnWidths(
+                    columnWidths);
+        }
+
+        @Override
+        public void onRequestRowDescription(String rowKey) {
+            getRpcProxy(MultiScrollTableServerRpc.class).requestRowDescription(
+                    rowKey);
         }
 
         @Override
-        public void onUpdateFirstRowIndex(Integer newFirstRowIndex) {
+        public void onRequestFullValue(String rowKey, String columnPid) {
+            getRpcProxy(MultiScrollTableServerRpc.class).requestFullValue(
+                    rowKey, columnPid);
+        }
+
+        @Override
+        public void onUpdateFirstRowIndex(Integer newFirstRowIndex,
+                Integer sequence) {
             getRpcProxy(MultiScrollTableServerRpc.class).updateFirstRowIndex(
-                    newFirstRowIndex);
+                    newFirstRowIndex, sequence);
+        }
+
+        @Override
+        public void onUpdateFirstRowIndexFromCache(Integer newFirstRowIndex,
+                Integer sequence) {
+            getRpcProxy(MultiScrollTableServerRpc.class)
+                    .updateFirstRowIndexFromCache(newFirstRowIndex, sequence);
         }
     };
 }
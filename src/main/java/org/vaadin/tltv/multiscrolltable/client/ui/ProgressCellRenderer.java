@@ -0,0 +1,72 @@
+/*
+ * Copyright 2013 Tomi Virtanen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vaadin.tltv.multiscrolltable.client.ui;
+
+import com.google.gwt.dom.client.Element;
+import com.google.gwt.dom.client.Style.Unit;
+import com.google.gwt.user.client.DOM;
+
+/**
+ * Renders a number between 0 and 1 as a progress bar. Values out of the range
+ * are clamped and other values are shown as an empty bar.
+ */
+public class ProgressCellRenderer implements CellRenderer {
+
+    public static final String STYLE = "v-ct-progress";
+
+    private static final String VALUE_STYLE = STYLE + "-value";
+
+    @Override
+    public void render(Element cellElement, String value) {
+        Element bar = cellElement.getFirstChildElement();
+        if (bar == null || !STYLE.equals(bar.getClassName())) {
+            cellElement.setInnerHTML("");
+            bar = DOM.createDiv();
+            bar.setClassName(STYLE);
+            Element fill = DOM.createDiv();
+            fill.setClassName(VALUE_STYLE);
+            bar.appendChild(fill);
+            cellElement.appendChild(bar);
+        }
+        bar.getFirstChildElement().getStyle()
+                .setWidth(getPercentage(value), Unit.PCT);
+    }
+
+    @Override
+    public void renderHtml(StringBuilder html, String value) {
+        html.append("<div class=\"").append(STYLE).append("\"><div class=\"")
+                .append(VALUE_STYLE).append("\" style=\"width:")
+                .append(getPercentage(value)).append("%;\"></div></div>");
+    }
+
+    @Override
+    public String getText(String value) {
+        // Bar has a fixed width in the theme
+        return "100 %";
+    }
+
+    private static double getPercentage(String value) {
+        if (value == null || value.length() == 0) {
+            return 0;
+        }
+        try {
+            double d = Double.parseDouble(value);
+            return Math.max(0, Math.min(1, d)) * 100;
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
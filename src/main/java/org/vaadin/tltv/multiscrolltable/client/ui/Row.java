@@ -20,6 +20,7 @@ import java.util.LinkedList;
 
 import com.google.gwt.dom.client.Style.Position;
 import com.google.gwt.dom.client.Style.Unit;
+import com.google.gwt.dom.client.Style.Visibility;
 import com.google.gwt.user.client.ui.FlowPanel;
 import com.google.gwt.user.client.ui.Widget;
 
@@ -27,10 +28,35 @@ public class Row extends FlowPanel {
 
     private int height;
 
+    /* Key of the item that this row currently shows. */
+    private String key;
+
     public Row() {
         setStylePrimaryName("v-ct-row");
     }
 
+    public String getKey() {
+        return key;
+    }
+
+    public void setKey(String key) {
+        this.key = key;
+    }
+
+    /**
+     * Hides the row while its content belongs to an other item. Row is shown
+     * again when its content is rendered.
+     * 
+     * @param rendered
+     */
+    public void setRendered(boolean rendered) {
+        if (rendered) {
+            getElement().getStyle().clearVisibility();
+        } else {
+            getElement().getStyle().setVisibility(Visibility.HIDDEN);
+        }
+    }
+
     public Cell getCell(int index) {
         return (Cell) getWidget(index);
     }
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2013 Tomi Virtanen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.vaadin.tltv.multiscrolltable.client.ui;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.vaadin.client.UIDL;
+
+/**
+ * <b>RowCache</b> keeps row UIDLs received from the server, keyed by the row
+ * position in the table. Least recently used rows are dropped when the
+ * capacity is exceeded. Rows are valid only for one data version; the cache
+ * is cleared when the server sends a different version.
+ */
+public class RowCache {
+
+    private static final int DEFAULT_CAPACITY = 500;
+
+    private final int capacity;
+
+    private int version = -1;
+
+    private final Map<Integer, UIDL> rows = new LinkedHashMap<Integer, UIDL>(
+            16, 0.75f, true) {
+
+        private static final long serialVersionUID = 6010347718273049814L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, UIDL> eldest) {
+            return size() > capacity;
+        }
+    };
+
+    public RowCache() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public RowCache(int capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * Set the data version of the rows that are put after this call. Cached
+     * rows are dropped when the version changes.
+     * 
+     * @param version
+     */
+    public void setVersion(int version) {
+        if (this.version != version) {
+            this.version = version;
+            rows.clear();
+        }
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    /**
+     * Put rows from the rows UIDL to the cache. Rows that the server marked as
+     * cached are not put, but taken from the cache instead.
+     * 
+     * @param uidlRows
+     *            Rows UIDL
+     * @param firstPosition
+     *            Position of the first row in the table
+     * @return All the rows of the UIDL in order, or null when any of the rows
+     *         marked as cached is missing from the cache
+     */
+    public List<UIDL> put(UIDL uidlRows, int firstPosition) {
+        List<UIDL> all = new ArrayList<UIDL>(uidlRows.getChildCount());
+        boolean missing = false;
+        for (int i = 0; i < uidlRows.getChildCount(); i++) {
+            UIDL row = uidlRows.getChildUIDL(i);
+            if (row.getBooleanAttribute(VCustomScrollTable.ATTR_CACHED)) {
+                row = rows.get(firstPosition + i);
+                missing |= (row == null);
+            } else {
+                rows.put(firstPosition + i, row);
+            }
+            all.add(row);
+        }
+        return missing ? null : all;
+    }
+
+    /**
+     * Returns the rows of the range, or null when any of them is missing.
+     * 
+     * @param firstPosition
+     *            Position of the first row in the table
+     * @param count
+     *            Count of the rows
+     * @return
+     */
+    public List<UIDL> getRange(int firstPosition, int count) {
+        List<UIDL> range = new ArrayList<UIDL>(count);
+        for (int i = firstPosition; i < (firstPosition + count); i++) {
+            UIDL row = rows.get(i);
+            if (row == null) {
+                return null;
+            }
+            range.add(row);
+        }
+        return range;
+    }
+
+    /**
+     * Drop all the cached rows.
+     */
+    public void clear() {
+        rows.clear();
+    }
+}
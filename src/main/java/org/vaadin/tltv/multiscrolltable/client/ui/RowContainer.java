@@ -16,7 +16,7 @@
 
 package org.vaadin.tltv.multiscrolltable.client.ui;
 
-import java.util.LinkedList;
+import java.util.List;
 
 import com.google.gwt.user.client.ui.InsertPanel;
 import com.vaadin.client.UIDL;
@@ -24,30 +24,76 @@ import com.vaadin.client.UIDL;
 public interface RowContainer {
 
     /**
-     * Creates a new Row when it doesn't already exist in the related component
-     * container and inserts it to the target position.
+     * Called at the start of every content update with the row UIDLs in the
+     * new order, before the createRow(...) calls. Rows with a key that isn't
+     * in the new rows are removed and kept for reuse. After this call
+     * createRow(...) may be called for the rows in any order.
+     * 
+     * @param rowUidls
+     */
+    void reconcileRows(List<UIDL> rowUidls);
+
+    /**
+     * Updates the Row in the target position by the UIDL. An existing Row with
+     * the same key is moved to the target position. Otherwise, when the Row
+     * doesn't exist in the related component container yet, a recycled or a
+     * new Row is inserted to the target position.
      * 
      * @param rowIndex
      * @param uidl
-     * @return
+     * @return Updated Row, or null when the container doesn't use Row widgets
      */
     Row createRow(int rowIndex, UIDL uidl);
 
+    /**
+     * Removes the rows after the given row count from the related component
+     * container. Removed rows are kept for reuse by createRow(...).
+     * 
+     * @param rowCount
+     */
+    void trimRows(int rowCount);
+
+    /**
+     * Called at the end of every content update, after the createRow(...) and
+     * trimRows(int) calls. Containers that render all rows at once write them
+     * to the DOM here.
+     */
+    void flush();
+
+    /**
+     * Returns true when rows updated by createRow(...) are shown right away.
+     * RowRenderer renders only these containers in chunks. Containers that
+     * show the rows in flush() are updated at once, chunks would only delay
+     * them.
+     * 
+     * @return
+     */
+    boolean isRenderedByRow();
+
+    /**
+     * Returns widths in pixels needed for the content of each column to be
+     * fully visible.
+     * 
+     * @param columnCount
+     * @return
+     */
+    int[] calculateMinWidths(int columnCount);
+
     void setReConstruct(boolean reConstruct);
 
     /**
-     * When true, next createRow(...) call will return a new Row element.
-     * Otherwise it will be updated by the new UIDL. Non-existing Row will be
-     * always created by createRow.
+     * When true, the whole content is being updated by the next createRow(...)
+     * calls. Existing Row elements are reused in both cases.
      * 
      * @return
      */
     boolean isReConstruct();
 
     /**
-     * Returns a list of current available rows.
+     * Returns a list of current available rows. Empty when the container
+     * doesn't use Row widgets.
      */
-    LinkedList<Row> getRows();
+    List<Row> getRows();
 
     /**
      * Set related insert-able panel that will be updated by createRow(...)
@@ -80,4 +126,11 @@ public interface RowContainer {
      * @param headerContainer
      */
     void setHeaderContainer(HeaderContainer headerContainer);
+
+    /**
+     * Set the dictionary that cell values referring to it are read from.
+     * 
+     * @param valueDictionary
+     */
+    void setValueDictionary(ValueDictionary valueDictionary);
 }
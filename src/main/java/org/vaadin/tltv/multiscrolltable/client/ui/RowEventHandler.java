@@ -0,0 +1,79 @@
+/*
+ * Copyright 2013 Tomi Virtanen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.vaadin.tltv.multiscrolltable.client.ui;
+
+import com.google.gwt.dom.client.Element;
+
+/**
+ * Handles user actions on the rows that need to be sent to the server.
+ */
+public interface RowEventHandler {
+
+    /**
+     * Receives the full value of a cell that the server sent truncated.
+     */
+    interface FullValueCallback {
+
+        /**
+         * @param value
+         *            Full value, or null when the row or the column is gone
+         */
+        void onFullValue(String value);
+    }
+
+    /**
+     * Expands or collapses the children of the row.
+     * 
+     * @param rowIndex
+     *            Index of the row in the items container
+     */
+    void onToggleCollapsed(int rowIndex);
+
+    /**
+     * Sets a new value for a cell.
+     * 
+     * @param columnPid
+     *            Property id key of the column
+     * @param rowIndex
+     *            Index of the row in the items container
+     * @param newValue
+     */
+    void onValueChange(String columnPid, int rowIndex, String newValue);
+
+    /**
+     * Pointer moved over the row, or out of the rows when the key is null.
+     * 
+     * @param rowKey
+     *            Key of the row's item, or null
+     * @param rowElement
+     *            Element of the row, or null
+     */
+    void onRowHover(String rowKey, Element rowElement);
+
+    /**
+     * Requests the full value of a truncated cell from the server.
+     * 
+     * @param rowKey
+     *            Key of the row's item
+     * @param columnPid
+     *            Property id key of the column
+     * @param callback
+     *            Called when the value arrives
+     */
+    void requestFullValue(String rowKey, String columnPid,
+            FullValueCallback callback);
+}
@@ -22,11 +22,12 @@ public class RowHeaderContainer extends DefaultRowContainer {
 
     @Override
     public Row createRow(int rowIndex, UIDL rowUidl) {
-        Row row = getRow(rowIndex);
+        Row row = getRow(rowIndex, getRowKey(rowUidl));
 
         Cell cell = getCell(0, row);
         cell.setValue(rowUidl
                 .getStringAttribute(VCustomScrollTable.ATTR_CAPTION));
+        row.setRendered(true);
 
         return row;
     }
@@ -0,0 +1,189 @@
+/*
+ * Copyright 2013 Tomi Virtanen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.vaadin.tltv.multiscrolltable.client.ui;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+
+import com.google.gwt.animation.client.AnimationScheduler;
+import com.google.gwt.animation.client.AnimationScheduler.AnimationCallback;
+import com.google.gwt.animation.client.AnimationScheduler.AnimationHandle;
+import com.google.gwt.core.client.Duration;
+import com.google.gwt.core.client.Scheduler.ScheduledCommand;
+import com.vaadin.client.UIDL;
+
+/**
+ * <b>RowRenderer</b> renders the same rows to several ContentPanels in chunks
+ * that fit in a time budget. Every later chunk is rendered in its own
+ * animation frame, so the browser handles input and paints between the
+ * chunks. Rows are rendered in priority order: visible rows of the focused
+ * panel, visible rows of the other panels and then the buffer rows. First
+ * chunk is rendered right away, so small updates complete synchronously.
+ * Panels that show their rows only when the update is finished, like the ones
+ * with HtmlRowContainer, are updated at once instead.
+ */
+public class RowRenderer {
+
+    /* Time budget of one chunk in milliseconds. */
+    private static final int CHUNK_BUDGET = 8;
+
+    private static class RowTask {
+        final ContentPanel panel;
+        final int rowIndex;
+
+        RowTask(ContentPanel panel, int rowIndex) {
+            this.panel = panel;
+            this.rowIndex = rowIndex;
+        }
+    }
+
+    private class RenderCommand implements AnimationCallback {
+
+        private final List<ContentPanel> panels;
+        private final LinkedList<RowTask> tasks;
+        private final ScheduledCommand finishedCommand;
+        private boolean cancelled = false;
+        private AnimationHandle frame;
+
+        RenderCommand(List<ContentPanel> panels, LinkedList<RowTask> tasks,
+                ScheduledCommand finishedCommand) {
+            this.panels = panels;
+            this.tasks = tasks;
+            this.finishedCommand = finishedCommand;
+        }
+
+        @Override
+        public void execute(double timestamp) {
+            frame = null;
+            if (!cancelled && renderChunk()) {
+                // Continue in the next frame, after the browser's turn
+                frame = AnimationScheduler.get().requestAnimationFrame(this);
+            }
+        }
+
+        /*
+         * Renders rows until the budget is used. Returns true when rows are
+         * left for the next chunk.
+         */
+        boolean renderChunk() {
+            Duration duration = new Duration();
+            while (!tasks.isEmpty()) {
+                RowTask task = tasks.removeFirst();
+                task.panel.renderRow(task.rowIndex);
+                if (!tasks.isEmpty()
+                        && duration.elapsedMillis() >= CHUNK_BUDGET) {
+                    return true; // continue in the next chunk
+                }
+            }
+            for (ContentPanel p : panels) {
+                p.finishUpdate();
+            }
+            activeCommand = null;
+            if (finishedCommand != null) {
+                finishedCommand.execute();
+            }
+            return false;
+        }
+    }
+
+    private RenderCommand activeCommand;
+
+    /**
+     * Render the rows to the panels. Rendering in progress is cancelled.
+     * 
+     * @param panels
+     *            Target panels
+     * @param focusedPanel
+     *            Panel that the user interacts with, or null
+     * @param rows
+     *            Row UIDLs in order, starting from the first row of the
+     *            content
+     * @param finishedCommand
+     *            Executed after all the panels are updated, or null
+     */
+    public void render(List<ContentPanel> panels, ContentPanel focusedPanel,
+            List<UIDL> rows, ScheduledCommand finishedCommand) {
+        cancel();
+
+        List<ContentPanel> ordered = new ArrayList<ContentPanel>(panels);
+        if (focusedPanel != null && ordered.remove(focusedPanel)) {
+            ordered.add(0, focusedPanel);
+        }
+        List<ContentPanel> updated = new ArrayList<ContentPanel>();
+        for (ContentPanel p : ordered) {
+            if (!p.beginUpdate(rows)) {
+                continue;
+            }
+            if (p.isRenderedByRow()) {
+                updated.add(p);
+            } else {
+                // Chunks would only delay the rows shown by finishUpdate()
+                for (int i = 0; i < rows.size(); i++) {
+                    p.renderRow(i);
+                }
+                p.finishUpdate();
+            }
+        }
+
+        LinkedList<RowTask> tasks = new LinkedList<RowTask>();
+        LinkedList<RowTask> bufferTasks = new LinkedList<RowTask>();
+        for (ContentPanel p : updated) {
+            for (int i = 0; i < rows.size(); i++) {
+                if (p.isRowVisible(i)) {
+                    tasks.add(new RowTask(p, i));
+                } else {
+                    bufferTasks.add(new RowTask(p, i));
+                }
+            }
+        }
+        tasks.addAll(bufferTasks);
+
+        RenderCommand command = new RenderCommand(updated, tasks,
+                finishedCommand);
+        activeCommand = command;
+        if (command.renderChunk()) {
+            command.frame = AnimationScheduler.get().requestAnimationFrame(
+                    command);
+        }
+    }
+
+    /**
+     * Returns true when rendering is still in progress.
+     * 
+     * @return
+     */
+    public boolean isRendering() {
+        return activeCommand != null;
+    }
+
+    /**
+     * Cancel the rendering in progress. Rows rendered so far are left as they
+     * are, rows that are not rendered yet stay hidden.
+     */
+    public void cancel() {
+        if (activeCommand != null) {
+            activeCommand.cancelled = true;
+            if (activeCommand.frame != null) {
+                activeCommand.frame.cancel();
+                activeCommand.frame = null;
+            }
+            activeCommand = null;
+        }
+    }
+}
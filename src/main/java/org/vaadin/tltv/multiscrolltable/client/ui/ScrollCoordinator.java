@@ -0,0 +1,162 @@
+/*
+ * Copyright 2013 Tomi Virtanen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.vaadin.tltv.multiscrolltable.client.ui;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.gwt.animation.client.AnimationScheduler;
+import com.google.gwt.animation.client.AnimationScheduler.AnimationCallback;
+import com.google.gwt.animation.client.AnimationScheduler.AnimationHandle;
+
+/**
+ * <b>ScrollCoordinator</b> gathers scroll positions requested during one
+ * animation frame and applies them to the scrollables once, right before the
+ * next frame. Vertical position is applied to all the registered contents,
+ * except to the one that was scrolled. Horizontal positions are applied to
+ * the target scrollables, like headers.
+ */
+public class ScrollCoordinator {
+
+    /**
+     * Handler that is called after the positions of a frame are applied.
+     */
+    public interface ScrollFrameHandler {
+
+        /**
+         * @param verticalScrollPosition
+         *            Logical vertical scroll position of the frame
+         * @param forceReset
+         *            True when any of the scrolls in the frame forced a
+         *            content update
+         */
+        void onScrollFrame(int verticalScrollPosition, boolean forceReset);
+    }
+
+    private final ScrollFrameHandler frameHandler;
+
+    private final List<ScrollableContent> contents = new ArrayList<ScrollableContent>();
+
+    private final Map<Scrollable, Integer> scrollLefts = new LinkedHashMap<Scrollable, Integer>();
+
+    private ScrollableContent verticalSource;
+    private int scrollTop;
+    private boolean forceReset;
+
+    private AnimationHandle animationHandle;
+
+    private final AnimationCallback callback = new AnimationCallback() {
+
+        @Override
+        public void execute(double timestamp) {
+            animationHandle = null;
+            applyFrame();
+        }
+    };
+
+    public ScrollCoordinator(ScrollFrameHandler frameHandler) {
+        this.frameHandler = frameHandler;
+    }
+
+    /**
+     * Set the contents that are scrolled vertically together. Pending
+     * positions are dropped.
+     * 
+     * @param contents
+     */
+    public void setContents(List<? extends ScrollableContent> contents) {
+        cancel();
+        this.contents.clear();
+        this.contents.addAll(contents);
+    }
+
+    /**
+     * Request a horizontal scroll position for the target. Only the last
+     * position of the frame is applied.
+     * 
+     * @param target
+     * @param horizontalScrollPosition
+     */
+    public void scrollLeft(Scrollable target, int horizontalScrollPosition) {
+        if (target == null) {
+            return;
+        }
+        scrollLefts.put(target, horizontalScrollPosition);
+        scheduleFrame();
+    }
+
+    /**
+     * Request a vertical scroll position for all the contents. Source content
+     * has already been scrolled and is left out.
+     * 
+     * @param source
+     * @param verticalScrollPosition
+     *            Logical vertical scroll position
+     * @param forceReset
+     */
+    public void scrollTop(ScrollableContent source, int verticalScrollPosition,
+            boolean forceReset) {
+        verticalSource = source;
+        scrollTop = verticalScrollPosition;
+        this.forceReset |= forceReset;
+        scheduleFrame();
+    }
+
+    /**
+     * Drop all the pending positions.
+     */
+    public void cancel() {
+        if (animationHandle != null) {
+            animationHandle.cancel();
+            animationHandle = null;
+        }
+        scrollLefts.clear();
+        verticalSource = null;
+        forceReset = false;
+    }
+
+    private void scheduleFrame() {
+        if (animationHandle == null) {
+            animationHandle = AnimationScheduler.get().requestAnimationFrame(
+                    callback);
+        }
+    }
+
+    private void applyFrame() {
+        for (Map.Entry<Scrollable, Integer> entry : scrollLefts.entrySet()) {
+            entry.getKey().setScrollLeft(entry.getValue());
+        }
+        scrollLefts.clear();
+
+        if (verticalSource == null) {
+            return;
+        }
+        ScrollableContent source = verticalSource;
+        boolean reset = forceReset;
+        verticalSource = null;
+        forceReset = false;
+        for (ScrollableContent sc : contents) {
+            if (!sc.equals(source)) {
+                sc.setScrollTop(scrollTop, true);
+            }
+        }
+        frameHandler.onScrollFrame(scrollTop, reset);
+    }
+}
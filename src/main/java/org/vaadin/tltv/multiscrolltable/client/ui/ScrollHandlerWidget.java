@@ -16,6 +16,8 @@
 
 package org.vaadin.tltv.multiscrolltable.client.ui;
 
+import java.util.Map;
+
 public interface ScrollHandlerWidget {
 
     void scrollContent(ScrollableContent sc, int horizontalScrollPosition,
@@ -26,4 +28,29 @@ public interface ScrollHandlerWidget {
     boolean isVerticalScrollbarVisible();
 
     int getBufferSize();
+
+    /**
+     * Returns the column width model shared by all content panels. Widths are
+     * by the property id key of the column.
+     * 
+     * @return
+     */
+    Map<String, Integer> getColumnWidthModel();
+
+    /**
+     * Called after the content panel has put new widths to the column width
+     * model.
+     * 
+     * @param changedWidths
+     *            Widths put to the model by the property id key
+     */
+    void columnWidthModelChanged(Map<String, Integer> changedWidths);
+
+    /**
+     * Returns the dictionary of the repeated cell values shared by all
+     * content panels.
+     * 
+     * @return
+     */
+    ValueDictionary getValueDictionary();
 }
@@ -0,0 +1,203 @@
+/*
+ * Copyright 2013 Tomi Virtanen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.vaadin.tltv.multiscrolltable.client.ui;
+
+/**
+ * <b>ScrollScaler</b> maps a logical vertical scroll position, which can be
+ * larger than the maximum element height supported by browsers, to a physical
+ * scroll position in a capped scroll range and back.
+ * <p>
+ * Jumps longer than the viewport (dragging the scroll bar) are mapped
+ * proportionally, so the whole logical range is reachable. Shorter scroll
+ * steps (mouse wheel, arrow keys) move the logical position pixel by pixel,
+ * so the local scrolling stays smooth. The difference between the logical and
+ * the physical position is kept as an offset, which is needed for positioning
+ * the rows in the physical content.
+ * </p>
+ */
+public class ScrollScaler {
+
+    /*
+     * Maximum physical height in pixels. Browsers have limits between ~1M and
+     * ~33M pixels, so the smallest one is used.
+     */
+    public static final int MAX_PHYSICAL_HEIGHT = 1000000;
+
+    /*
+     * Maximum logical height in pixels. Positions are ints, so half of the int
+     * range is used to leave room for the viewport and the row buffer added
+     * to them.
+     */
+    public static final int MAX_LOGICAL_HEIGHT = Integer.MAX_VALUE / 2;
+
+    private int logicalHeight = 0;
+    private int physicalHeight = 0;
+
+    private int prevPhysical = 0;
+    private int offset = 0;
+
+    /**
+     * Set the logical height of the whole content in pixels. Heights over
+     * MAX_LOGICAL_HEIGHT are capped, so content past it is not reachable.
+     * 
+     * @param logicalHeight
+     */
+    public void setLogicalHeight(long logicalHeight) {
+        this.logicalHeight = (int) Math.min(logicalHeight, MAX_LOGICAL_HEIGHT);
+        physicalHeight = Math.min(this.logicalHeight, MAX_PHYSICAL_HEIGHT);
+        if (!isScaled()) {
+            offset = 0;
+        }
+    }
+
+    public int getLogicalHeight() {
+        return logicalHeight;
+    }
+
+    /**
+     * Returns height in pixels for the physical content element.
+     * 
+     * @return
+     */
+    public int getPhysicalHeight() {
+        return physicalHeight;
+    }
+
+    /**
+     * Returns true when the logical height doesn't fit in the physical height.
+     * 
+     * @return
+     */
+    public boolean isScaled() {
+        return logicalHeight > physicalHeight;
+    }
+
+    /**
+     * Returns the logical position minus the physical position.
+     * 
+     * @return
+     */
+    public int getOffset() {
+        return offset;
+    }
+
+    /**
+     * Returns the logical scroll position for the physical one. Doesn't change
+     * the state of the scaler, see update(int, int).
+     * 
+     * @param physical
+     *            Physical scroll position
+     * @param viewportHeight
+     *            Height of the visible area
+     * @return
+     */
+    public int toLogical(int physical, int viewportHeight) {
+        int physicalMax = physicalHeight - viewportHeight;
+        if (!isScaled() || physicalMax <= 0) {
+            return physical;
+        }
+        int logicalMax = logicalHeight - viewportHeight;
+        if (Math.abs(physical - prevPhysical) > viewportHeight) {
+            // Proportional mapping reaches both ends of the logical range
+            return (int) ((double) physical * logicalMax / physicalMax);
+        }
+        // Steps move pixel by pixel, ends are reached only by the steps
+        return Math.max(0, Math.min(physical + offset, logicalMax));
+    }
+
+    /**
+     * Moves the scaler to the physical scroll position after the user has
+     * scrolled and returns the logical position for it. The offset is kept
+     * for the next steps.
+     * 
+     * @param physical
+     *            Physical scroll position
+     * @param viewportHeight
+     *            Height of the visible area
+     * @return
+     */
+    public int update(int physical, int viewportHeight) {
+        int logical = toLogical(physical, viewportHeight);
+        if (isScaled()) {
+            prevPhysical = physical;
+            offset = logical - physical;
+        }
+        return logical;
+    }
+
+    /**
+     * Returns true when the physical position is at the end of its range but
+     * the logical one is not. Scroll bar can't move further, so the physical
+     * position needs to be set again with toPhysical(int, int).
+     * 
+     * @param physical
+     *            Physical scroll position
+     * @param viewportHeight
+     *            Height of the visible area
+     * @return
+     */
+    public boolean isAtPhysicalEndOnly(int physical, int viewportHeight) {
+        int physicalMax = physicalHeight - viewportHeight;
+        if (!isScaled() || physicalMax <= 0) {
+            return false;
+        }
+        int logical = toLogical(physical, viewportHeight);
+        return (physical <= 0 && logical > 0)
+                || (physical >= physicalMax && logical < logicalHeight
+                        - viewportHeight);
+    }
+
+    /**
+     * Returns the physical scroll position for the logical one. Keeps the
+     * current offset when the position is reachable with it and not at the
+     * end of the physical range, so the scroll bar can still move both ways.
+     * 
+     * @param logical
+     *            Logical scroll position
+     * @param viewportHeight
+     *            Height of the visible area
+     * @return
+     */
+    public int toPhysical(int logical, int viewportHeight) {
+        int physicalMax = physicalHeight - viewportHeight;
+        if (!isScaled() || physicalMax <= 0) {
+            return logical;
+        }
+        int logicalMax = logicalHeight - viewportHeight;
+        int physical = logical - offset;
+        if (physical < 0 || physical > physicalMax
+                || (physical == 0 && logical > 0)
+                || (physical == physicalMax && logical < logicalMax)
+                || Math.abs(physical - prevPhysical) > viewportHeight) {
+            physical = (int) ((double) logical * physicalMax / logicalMax);
+        }
+        physical = Math.max(0, Math.min(physical, physicalMax));
+        prevPhysical = physical;
+        offset = logical - physical;
+        return physical;
+    }
+
+    /**
+     * Returns the logical maximum scroll position for the physical one.
+     * 
+     * @param physicalMax
+     * @return
+     */
+    public int toLogicalMax(int physicalMax) {
+        return logicalHeight - (physicalHeight - physicalMax);
+    }
+}
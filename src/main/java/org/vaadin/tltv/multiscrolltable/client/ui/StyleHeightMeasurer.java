@@ -0,0 +1,144 @@
+/*
+ * Copyright 2013 Tomi Virtanen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.vaadin.tltv.multiscrolltable.client.ui;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import com.google.gwt.dom.client.Element;
+import com.google.gwt.dom.client.Style.Position;
+import com.google.gwt.dom.client.Style.Visibility;
+import com.google.gwt.user.client.DOM;
+
+/**
+ * <b>StyleHeightMeasurer</b> measures default heights of the rows and the
+ * header cells from the theme. All known styles are measured in one batch on
+ * the first request and the heights are cached for all tables. Cache is
+ * cleared when the theme changes, together with the cached text widths of
+ * TextWidthMeasurer.
+ */
+public class StyleHeightMeasurer {
+
+    public static final String ROW_STYLE = "v-ct-row";
+    public static final String HEADER_GROUP_STYLE = "v-ct-header-group";
+    public static final String HEADER_STYLE = "v-ct-header";
+
+    private static final String[] STYLES = { ROW_STYLE, HEADER_GROUP_STYLE,
+            HEADER_STYLE };
+
+    private static final StyleHeightMeasurer INSTANCE = new StyleHeightMeasurer();
+
+    private final Map<String, Integer> cache = new HashMap<String, Integer>();
+
+    private String theme;
+
+    private StyleHeightMeasurer() {
+    }
+
+    public static StyleHeightMeasurer get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Set the theme in use. Cached heights and text widths are cleared when
+     * the theme changes.
+     * 
+     * @param theme
+     *            Theme URI or name
+     */
+    public void setTheme(String theme) {
+        if (theme == null ? this.theme != null : !theme.equals(this.theme)) {
+            this.theme = theme;
+            clearCache();
+            TextWidthMeasurer.get().clearCache();
+        }
+    }
+
+    /**
+     * Returns true when the height of the style is cached.
+     * 
+     * @param styleName
+     * @return
+     */
+    public boolean isMeasured(String styleName) {
+        return cache.containsKey(styleName);
+    }
+
+    /**
+     * Returns height in pixels of an element with the style class. Height is
+     * measured inside the given parent element when it's not cached yet.
+     * Parent needs to be attached to the DOM for correct result. Zero heights
+     * are not cached.
+     * 
+     * @param parent
+     *            Element where the measure elements are attached to
+     * @param styleName
+     *            Style class
+     * @return
+     */
+    public int getHeight(Element parent, String styleName) {
+        Integer height = cache.get(styleName);
+        if (height == null) {
+            measure(parent, styleName);
+            height = cache.get(styleName);
+        }
+        return (height != null) ? height : 0;
+    }
+
+    /**
+     * Clears all cached heights. Needed when styles change without a theme
+     * change.
+     */
+    public void clearCache() {
+        cache.clear();
+    }
+
+    /*
+     * Measures the known styles and the given one in one layout.
+     */
+    private void measure(Element parent, String styleName) {
+        Map<String, Element> measures = new HashMap<String, Element>();
+        Element container = DOM.createDiv();
+        container.getStyle().setPosition(Position.ABSOLUTE);
+        container.getStyle().setVisibility(Visibility.HIDDEN);
+        for (String style : STYLES) {
+            measures.put(style, createMeasure(style));
+        }
+        if (!measures.containsKey(styleName)) {
+            measures.put(styleName, createMeasure(styleName));
+        }
+        for (Element measure : measures.values()) {
+            container.appendChild(measure);
+        }
+
+        parent.appendChild(container);
+        for (Map.Entry<String, Element> entry : measures.entrySet()) {
+            int height = entry.getValue().getOffsetHeight();
+            if (height > 0) {
+                cache.put(entry.getKey(), height);
+            }
+        }
+        parent.removeChild(container);
+    }
+
+    private Element createMeasure(String styleName) {
+        Element measure = DOM.createDiv();
+        measure.addClassName(styleName);
+        return measure;
+    }
+}
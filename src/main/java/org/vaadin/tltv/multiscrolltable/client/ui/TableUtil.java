@@ -1,8 +1,24 @@
 package org.vaadin.tltv.multiscrolltable.client.ui;
 
+import com.google.gwt.dom.client.Element;
+import com.google.gwt.dom.client.EventTarget;
+
 public class TableUtil {
 
     public static String defaultString(String str) {
         return str == null ? "" : str;
     }
+
+    /**
+     * Returns true when the event target is the element or inside it.
+     * 
+     * @param element
+     * @param target
+     *            Event target, may be null
+     * @return
+     */
+    public static boolean isOrHasTarget(Element element, EventTarget target) {
+        return target != null && Element.is(target)
+                && element.isOrHasChild(Element.as(target));
+    }
 }
@@ -0,0 +1,154 @@
+/*
+ * Copyright 2013 Tomi Virtanen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.vaadin.tltv.multiscrolltable.client.ui;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.gwt.dom.client.Element;
+import com.google.gwt.dom.client.Style.Position;
+import com.google.gwt.dom.client.Style.Visibility;
+import com.google.gwt.dom.client.Style.WhiteSpace;
+import com.google.gwt.user.client.DOM;
+
+/**
+ * <b>TextWidthMeasurer</b> measures widths of texts rendered with a given
+ * style class. All texts of one measure call are measured in one batch: the
+ * measure elements are built in a detached container that is attached once,
+ * read and removed, so the browser calculates the layout only once per batch.
+ * Measured widths are cached by the style class and the text and are shared
+ * between all tables. Least recently used widths of a style are dropped when
+ * the capacity is exceeded, and the cache is cleared when the theme changes.
+ */
+public class TextWidthMeasurer {
+
+    private static final int CAPACITY_PER_STYLE = 5000;
+
+    private static final TextWidthMeasurer INSTANCE = new TextWidthMeasurer();
+
+    private final Map<String, Map<String, Integer>> cache = new HashMap<String, Map<String, Integer>>();
+
+    private TextWidthMeasurer() {
+    }
+
+    public static TextWidthMeasurer get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Returns widths in pixels for all the given texts rendered with the style
+     * class. Texts not found in the cache are measured in one batch inside the
+     * given parent element, which needs to be attached to the DOM for correct
+     * result.
+     * 
+     * @param parent
+     *            Element where the measure elements are attached to
+     * @param styleName
+     *            Style class of the measured texts
+     * @param height
+     *            Height in pixels for the measure elements
+     * @param texts
+     *            Texts to measure
+     * @return Widths by the text
+     */
+    public Map<String, Integer> measure(Element parent, String styleName,
+            int height, Collection<String> texts) {
+        Map<String, Integer> styleCache = cache.get(styleName);
+        if (styleCache == null) {
+            styleCache = createStyleCache();
+            cache.put(styleName, styleCache);
+        }
+        Map<String, Integer> widths = new HashMap<String, Integer>();
+        Map<String, Element> measures = new LinkedHashMap<String, Element>();
+        Element container = null;
+        for (String text : texts) {
+            Integer width = styleCache.get(text);
+            if (width != null) {
+                widths.put(text, width);
+            } else if (!measures.containsKey(text)) {
+                if (container == null) {
+                    container = createContainer();
+                }
+                Element measure = createMeasure(styleName, height, text);
+                container.appendChild(measure);
+                measures.put(text, measure);
+            }
+        }
+        if (container == null) {
+            return widths;
+        }
+
+        // One layout for all measure elements
+        parent.appendChild(container);
+        List<Integer> measured = new ArrayList<Integer>(measures.size());
+        for (Element measure : measures.values()) {
+            measured.add(measure.getClientWidth());
+        }
+        parent.removeChild(container);
+
+        int index = 0;
+        for (String text : measures.keySet()) {
+            Integer width = measured.get(index++);
+            styleCache.put(text, width);
+            widths.put(text, width);
+        }
+        return widths;
+    }
+
+    /**
+     * Clears all cached widths. Needed when styles of the measured texts
+     * change.
+     */
+    public void clearCache() {
+        cache.clear();
+    }
+
+    private static Map<String, Integer> createStyleCache() {
+        return new LinkedHashMap<String, Integer>(16, 0.75f, true) {
+
+            private static final long serialVersionUID = -2954402431839512650L;
+
+            @Override
+            protected boolean removeEldestEntry(
+                    Map.Entry<String, Integer> eldest) {
+                return size() > CAPACITY_PER_STYLE;
+            }
+        };
+    }
+
+    private Element createContainer() {
+        Element container = DOM.createDiv();
+        container.getStyle().setPosition(Position.ABSOLUTE);
+        container.getStyle().setVisibility(Visibility.HIDDEN);
+        return container;
+    }
+
+    private Element createMeasure(String styleName, int height, String text) {
+        Element measure = DOM.createElement("p");
+        measure.getStyle().setPosition(Position.ABSOLUTE);
+        measure.getStyle().setProperty("width", "auto");
+        measure.getStyle().setProperty("height", height + "px");
+        measure.getStyle().setWhiteSpace(WhiteSpace.NOWRAP);
+        measure.setInnerText(text);
+        measure.addClassName(styleName);
+        return measure;
+    }
+}
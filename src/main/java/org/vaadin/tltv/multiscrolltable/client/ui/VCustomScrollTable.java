@@ -16,11 +16,20 @@
 package org.vaadin.tltv.multiscrolltable.client.ui;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import org.vaadin.tltv.multiscrolltable.client.event.MultiScrollTableEventHandler;
+import org.vaadin.tltv.multiscrolltable.client.ui.RowEventHandler.FullValueCallback;
+import org.vaadin.tltv.multiscrolltable.client.ui.ScrollCoordinator.ScrollFrameHandler;
 
+import com.google.gwt.core.client.Duration;
 import com.google.gwt.core.client.GWT;
+import com.google.gwt.core.client.Scheduler.ScheduledCommand;
+import com.google.gwt.dom.client.Element;
 import com.google.gwt.user.client.Timer;
 import com.google.gwt.user.client.ui.Composite;
 import com.google.gwt.user.client.ui.FlowPanel;
@@ -28,7 +37,7 @@ import com.vaadin.client.ApplicationConnection;
 import com.vaadin.client.UIDL;
 
 public class VCustomScrollTable extends Composite implements
-        ScrollHandlerWidget {
+        ScrollHandlerWidget, RowEventHandler, ScrollFrameHandler {
 
     public static final String TAG_COLUMNS = "cols";
     public static final String TAG_COLUMN = "c";
@@ -37,6 +46,9 @@ public class VCustomScrollTable extends Composite implements
     public static final String TAG_VALUE = "v";
     public static final String TAG_SCROLLCONTENT = "sc";
     public static final String TAG_COLUMNGROUP = "cg";
+    public static final String TAG_COLUMN_DIFF = "cdiff";
+    public static final String TAG_HEADER_CELLS = "hcs";
+    public static final String TAG_HEADER_CELL = "hc";
 
     public static final String ATTR_IMMEDIATE = "im";
     public static final String ATTR_BUFFERSIZE = "buffsize";
@@ -50,15 +62,36 @@ public class VCustomScrollTable extends Composite implements
     public static final String ATTR_OPEN = "open";
     public static final String ATTR_INDEX = "index";
     public static final String ATTR_CAPTION = "cap";
-    public static final String ATTR_DESCRIPTION = "desc";
     public static final String ATTR_DEPTH = "depth";
     public static final String ATTR_PID = "pid";
     public static final String ATTR_READONLY = "ro";
     public static final String ATTR_SCROLL_GROUPS = "csize";
     public static final String ATTR_CHECK_SPACE_AVAILABLE = "chck";
-    public static final String ATTR_COLUMN_STRUCTURE_CHANGED = "csc";
     public static final String ATTR_ROW_STRUCTURE_CHANGED = "rsc";
     public static final String ATTR_ROWS_CHANGED = "rowc";
+    public static final String ATTR_REMOVED_COLS = "rmcols";
+    public static final String ATTR_KEY = "key";
+    public static final String ATTR_VERSION = "ver";
+    public static final String ATTR_BASE_VERSION = "bver";
+    public static final String ATTR_LEVELS = "lvls";
+    public static final String ATTR_ROW = "r";
+    public static final String ATTR_OFFSET = "off";
+    public static final String ATTR_COLSPAN = "cs";
+    public static final String ATTR_ROWSPAN = "rs";
+    public static final String ATTR_WIDTH = "w";
+    public static final String ATTR_EXPAND_RATIO = "er";
+    public static final String ATTR_DATA_VERSION = "dver";
+    public static final String ATTR_FIRST_POSITION = "fpos";
+    public static final String ATTR_ROW_REQUEST_SEQUENCE = "rseq";
+    public static final String ATTR_CACHED = "cchd";
+    public static final String ATTR_NUMBER_PATTERN = "nfmt";
+    public static final String ATTR_DECIMAL_SEPARATOR = "dsep";
+    public static final String ATTR_GROUPING_SEPARATOR = "gsep";
+    public static final String ATTR_RENDERER = "rndr";
+    public static final String ATTR_DICTIONARY = "dct";
+    public static final String ATTR_DICTIONARY_OFFSET = "doff";
+    public static final String ATTR_DICTIONARY_INDEX = "di";
+    public static final String ATTR_TRUNCATED = "trnc";
 
     public static final String VAR_TOGGLE_COLLAPSED = "tc";
     public static final String VAR_NEWVALUE = "nValue";
@@ -87,22 +120,105 @@ public class VCustomScrollTable extends Composite implements
     private int width = -1;
     private int measuredRowHeight = -1;
 
+    // Visible row count that was last sent to the server
+    private int requestedVisibleRows = -1;
+
+    // True when the visible row count couldn't be measured yet and is sent on
+    // the next layout
+    private boolean visibleRowCountDeferred = false;
+
+    // Column widths by the property id key. Columns with a width here are not
+    // measured when the content is created.
+    private final Map<String, Integer> columnWidthModel = new HashMap<String, Integer>();
+    private int columnWidthModelVersion = -1;
+
     protected final RootUIDLMetaData rootMetaData = new RootUIDLMetaData();
 
     private boolean reconstructAll = true;
 
+    // When true, widget has been attached again with the content kept from
+    // the previous attach. Content is validated by the next UIDL.
+    private boolean reattached = false;
+
+    // When true, rendering of the rows was cancelled by a detach.
+    private boolean renderInterrupted = false;
+
+    /* Rows received earlier, rendered again without a server round trip. */
+    private final RowCache rowCache = new RowCache();
+
+    /* Repeated cell values by the index the server refers them with. */
+    private final ValueDictionary valueDictionary = new ValueDictionary();
+
+    /* When true, rows are rendered by HtmlRowContainer. */
+    private boolean lightweightRows = false;
+
+    /* Version of the header layout that the header panels are built with. */
+    private int headerVersion = -1;
+
     /* Variables for scrolling */
-    private static final int SCROLL_DELAY = 100; // milliseconds
+    private int minScrollRequestInterval = 100; // milliseconds
+    private double lastScrollRequestTime = 0;
+    private boolean scrollRequestScheduled = false;
     private int contentVerScrollPos = 0;
     private int scrollingVertically = 0;
     private int activeScrollIndex = 0;
 
+    /*
+     * Sequence number of the last row request and the last one that the
+     * server will respond to. Requests from the row cache are not responded.
+     */
+    private int rowRequestSequence = 0;
+    private int respondedRowRequestSequence = 0;
+
+    /* Renders rows to the panels in chunks, visible rows first. */
+    private final RowRenderer rowRenderer = new RowRenderer();
+
+    /* Content panel that was scrolled last. Its rows are rendered first. */
+    private ContentPanel focusedContent;
+
+    /* Applies scroll positions to all the panels once per animation frame. */
+    private final ScrollCoordinator scrollCoordinator = new ScrollCoordinator(
+            this);
+
     private MultiScrollTableEventHandler eventHandler;
 
+    /* Milliseconds on a row before its description is requested. */
+    private static final int ROW_DESCRIPTION_DELAY = 500;
+
+    /*
+     * Row descriptions by the row key. Empty for rows without a description.
+     * Cleared when the data version changes.
+     */
+    private final Map<String, String> rowDescriptions = new HashMap<String, String>();
+    private boolean rowDescriptionsEnabled = false;
+    private String hoveredRowKey;
+    private Element hoveredRowElement;
+
+    private final Timer rowDescriptionTimer = new Timer() {
+
+        @Override
+        public void run() {
+            if (hoveredRowKey != null) {
+                eventHandler.onRequestRowDescription(hoveredRowKey);
+            }
+        }
+    };
+
+    /*
+     * Callbacks waiting for the full values of the truncated cells, by the row
+     * key and the column pid.
+     */
+    private final Map<String, FullValueCallback> fullValueCallbacks = new HashMap<String, FullValueCallback>();
+
     protected class RootUIDLMetaData {
 
         UIDL uidlColumns;
+        UIDL uidlColumnDiff;
+        UIDL uidlHeaderCells;
         UIDL uidlRows;
+        // rows of the uidlRows with the cached rows taken from the row cache,
+        // or null when some of them are missing
+        List<UIDL> rows;
 
         // Header structure needs to be repainted
         boolean createHeader = false;
@@ -121,6 +237,10 @@ public class VCustomScrollTable extends Composite implements
         // do only row content needs to be recreated (not the whole layout
         // structure)
         boolean clearContent = false;
+        // rows are a response to an outdated row request
+        boolean outdatedContent = false;
+
+        private int responseSequence = 0;
 
         private int contentSize = -1;
         private int bufferSize = -1;
@@ -133,6 +253,15 @@ public class VCustomScrollTable extends Composite implements
          * @param uidl
          */
         private void update(UIDL uidl) {
+            if (reattached) {
+                // Content kept while detached is valid only for the same
+                // data version.
+                reattached = false;
+                if (uidl.getIntAttribute(ATTR_DATA_VERSION) != rowCache
+                        .getVersion()) {
+                    reconstructAll = true;
+                }
+            }
             measureAvailableHeightForContent = reconstructAll
                     || uidl.getBooleanAttribute(ATTR_CHECK_SPACE_AVAILABLE);
             bufferSize = uidl.getIntAttribute(ATTR_BUFFERSIZE);
@@ -141,16 +270,39 @@ public class VCustomScrollTable extends Composite implements
             int csize = contentSize;
             contentSize = uidl.getIntAttribute(ATTR_SCROLL_GROUPS);
             requestedRows = uidl.getIntAttribute(ATTR_ROWS);
+            responseSequence = uidl.getIntAttribute(ATTR_ROW_REQUEST_SEQUENCE);
+            if (responseSequence > rowRequestSequence) {
+                // Widget is new, continue from the server's sequence
+                rowRequestSequence = responseSequence;
+            }
 
             uidlColumns = uidl.getChildByTagName(TAG_COLUMNS);
+            uidlColumnDiff = uidl.getChildByTagName(TAG_COLUMN_DIFF);
+            uidlHeaderCells = uidl.getChildByTagName(TAG_HEADER_CELLS);
             uidlRows = uidl.getChildByTagName(TAG_ROWS);
 
+            int dataVersion = uidl.getIntAttribute(ATTR_DATA_VERSION);
+            if (rowCache.getVersion() != dataVersion) {
+                rowDescriptions.clear();
+            }
+            rowCache.setVersion(dataVersion);
+            if (uidlRows != null) {
+                if (valueDictionary.update(uidlRows)) {
+                    rowCache.clear();
+                }
+                rows = rowCache.put(uidlRows,
+                        uidlRows.getIntAttribute(ATTR_FIRST_POSITION));
+            }
+
+            updateHeaderMetaData();
+
             if (reconstructAll || contentSize != csize) {
-                createHeader = true;
+                // Header panels are kept when server didn't send a new
+                // header layout.
+                createHeader |= headers.isEmpty();
                 createContent = true;
                 createFloatingRows = true;
                 updateContent = false;
-                updateHeader = false;
                 updateFloatingRows = false;
                 reconstructAll = false;
                 clearContent = false;
@@ -158,17 +310,12 @@ public class VCustomScrollTable extends Composite implements
             }
             reconstructAll = false;
 
-            if (uidlColumns != null) {
-                createHeader = uidlColumns
-                        .getBooleanAttribute(ATTR_COLUMN_STRUCTURE_CHANGED);
-                updateHeader = !createHeader;
-                if (createHeader) {
-                    // when header structure has changed, rows needs to be
-                    // re-created
-                    createContent = true;
-                    createFloatingRows = true;
-                    return;
-                }
+            if (createHeader) {
+                // when header structure has changed, rows needs to be
+                // re-created
+                createContent = true;
+                createFloatingRows = true;
+                return;
             }
 
             if (uidlRows != null) {
@@ -177,6 +324,8 @@ public class VCustomScrollTable extends Composite implements
                 clearContent = !createContent
                         && uidlRows.getBooleanAttribute(ATTR_ROWS_CHANGED);
                 updateContent = !createContent;
+                outdatedContent = updateContent
+                        && responseSequence < rowRequestSequence;
             }
 
             // TODO Floating row meta data?
@@ -185,9 +334,43 @@ public class VCustomScrollTable extends Composite implements
             // }
         }
 
+        /*
+         * Header tree is sent only when its version changes. Otherwise UIDL
+         * may contain a column diff or patches for single header cells.
+         */
+        private void updateHeaderMetaData() {
+            createHeader = false;
+            updateHeader = false;
+            if (uidlColumns != null) {
+                int version = uidlColumns.getIntAttribute(ATTR_VERSION);
+                createHeader = version != headerVersion;
+                updateHeader = !createHeader;
+                headerVersion = version;
+            } else if (uidlColumnDiff != null) {
+                int baseVersion = uidlColumnDiff
+                        .getIntAttribute(ATTR_BASE_VERSION);
+                if (baseVersion == headerVersion) {
+                    updateHeader = true;
+                    headerVersion = uidlColumnDiff
+                            .getIntAttribute(ATTR_VERSION);
+                } else {
+                    GWT.log("Skipped column diff for header version "
+                            + baseVersion);
+                    uidlColumnDiff = null;
+                }
+            }
+            if (uidlHeaderCells != null && !createHeader) {
+                updateHeader = true;
+            }
+        }
+
         void clear() {
+            outdatedContent = false;
             uidlColumns = null;
+            uidlColumnDiff = null;
+            uidlHeaderCells = null;
             uidlRows = null;
+            rows = null;
         }
     }
 
@@ -205,14 +388,35 @@ public class VCustomScrollTable extends Composite implements
 
     @Override
     protected void onLoad() {
-        reconstructAll = true;
         super.onLoad();
+        if (contents.isEmpty()) {
+            reconstructAll = true;
+        } else {
+            // Rows, header and measured widths are kept while detached.
+            // Scroll positions are restored by the content panels.
+            reattached = true;
+            if (renderInterrupted && !renderFromCache(activeScrollIndex)) {
+                reconstructAll = true;
+            }
+        }
+        renderInterrupted = false;
+    }
+
+    @Override
+    protected void onUnload() {
+        renderInterrupted = rowRenderer.isRendering();
+        scrollCoordinator.cancel();
+        rowRenderer.cancel();
+        resetRowHover();
+        super.onUnload();
     }
 
     public void updateFromUIDL(UIDL uidl, ApplicationConnection client) {
         this.client = client;
         pid = uidl.getId();
 
+        StyleHeightMeasurer.get().setTheme(
+                client.getConfiguration().getThemeUri());
         rootMetaData.update(uidl);
     }
 
@@ -232,11 +436,26 @@ public class VCustomScrollTable extends Composite implements
             updateHeaderPanels();
         }
 
-        if (!rootMetaData.measureAvailableHeightForContent) {
+        boolean measure = rootMetaData.measureAvailableHeightForContent;
+        boolean correctRowCount = false;
+        if (measure && rootMetaData.uidlRows != null) {
+            // Server painted rows for an estimated count of the visible rows.
+            // Show them and request the rows again only when the estimate was
+            // wrong.
+            measure = false;
+            int visibleRows = countVisibleRows();
+            visibleRowCountDeferred = visibleRows < 0;
+            correctRowCount = visibleRows >= 0
+                    && visibleRows != getRequestedRows();
+        }
+
+        if (!measure) {
             if (rootMetaData.createContent) {
                 contents.clear();
                 initContentPanels();
                 updateContentPanels();
+            } else if (rootMetaData.outdatedContent) {
+                updateOutdatedContentPanels();
             } else if (rootMetaData.updateContent) {
                 updateContentPanels();
             }
@@ -247,7 +466,8 @@ public class VCustomScrollTable extends Composite implements
                 // TODO
             }
 
-        } else {
+        }
+        if (measure || correctRowCount) {
             measureAndSendRequestForVisibleRows();
         }
 
@@ -258,6 +478,15 @@ public class VCustomScrollTable extends Composite implements
      * Update data in header panels
      */
     private void updateHeaderPanels() {
+        if (rootMetaData.uidlColumnDiff != null && !rootMetaData.createHeader
+                && !headers.isEmpty()) {
+            // Column diff is sent only for the default scroll content.
+            headers.get(0).applyColumnDiff(rootMetaData.uidlColumnDiff);
+        }
+        if (rootMetaData.uidlHeaderCells != null
+                && !rootMetaData.createHeader) {
+            updateHeaderCells(rootMetaData.uidlHeaderCells);
+        }
         if (rootMetaData.uidlColumns == null) {
             return;
         }
@@ -273,6 +502,31 @@ public class VCustomScrollTable extends Composite implements
         // TODO Auto-generated method stub
     }
 
+    /**
+     * Update captions, readonly states, widths and expand ratios of the single
+     * header cells. Content panels with a changed column width or expand
+     * ratio update their column widths without rendering the rows again.
+     */
+    private void updateHeaderCells(UIDL uidl) {
+        Set<HeaderPanel> layoutChanged = new HashSet<HeaderPanel>();
+        for (int i = 0; i < uidl.getChildCount(); i++) {
+            UIDL cellUidl = uidl.getChildUIDL(i);
+            for (HeaderPanel h : headers) {
+                if (h.updateHeaderCell(cellUidl)) {
+                    if (cellUidl.hasAttribute(ATTR_WIDTH)) {
+                        layoutChanged.add(h);
+                    }
+                    break;
+                }
+            }
+        }
+        for (int i = 0; i < contents.size() && i < headers.size(); i++) {
+            if (layoutChanged.contains(headers.get(i))) {
+                contents.get(i).updateColumnWidths();
+            }
+        }
+    }
+
     /**
      * Update data in content panels
      */
@@ -280,36 +534,80 @@ public class VCustomScrollTable extends Composite implements
         if (rootMetaData.uidlRows == null) {
             return;
         }
-        // Update row header panel
-        if (rowHeaderPanel != null) {
-            if (rootMetaData.clearContent) {
-                rowHeaderPanel.clearContentAndSetReconstructFlagOn();
-            }
-            rowHeaderPanel.updateContent(rootMetaData.uidlRows);
+        if (rootMetaData.rows == null) {
+            // Some of the rows that server expected to be cached are gone.
+            // Sending the same row count again makes the server paint all
+            // the rows.
+            GWT.log("Cached rows missing");
+            sendVisibleRowCount(getRequestedRows());
+            return;
         }
+        updateContentPanels(rootMetaData.rows, rootMetaData.clearContent);
+    }
 
-        ContentPanel lastContentPanel = null; // last content has the vertical
-        // scroll-bar.
-        if (!contents.isEmpty()) {
-            lastContentPanel = contents.get(contents.size() - 1);
+    /**
+     * Update data in content panels by the given rows.
+     * 
+     * @param rows
+     *            Row UIDLs, starting from the first row of the content
+     * @param clearContent
+     *            True when rows are not the same ones that were rendered
+     *            before
+     */
+    private void updateContentPanels(List<UIDL> rows, boolean clearContent) {
+        List<ContentPanel> panels = new ArrayList<ContentPanel>();
+        // Update row header panel
+        if (rowHeaderPanel != null) {
+            panels.add(rowHeaderPanel);
         }
         // Update content panels
-        for (ContentPanel p : contents) {
-            if (rootMetaData.clearContent) {
+        panels.addAll(contents);
+        resetRowHover();
+        if (clearContent) {
+            for (ContentPanel p : panels) {
                 p.clearContentAndSetReconstructFlagOn();
             }
-
-            p.updateContent(rootMetaData.uidlRows);
         }
 
-        // update vertical scroll position here. Content with a visible
-        // vertical scrollbar may have reseted it's scroll position to zero.
-        if (lastContentPanel != null) {
-            lastContentPanel.resetVerticalScrollPosition();
+        // last content has the vertical scroll-bar.
+        final ContentPanel lastContentPanel = contents.isEmpty() ? null
+                : contents.get(contents.size() - 1);
+        ContentPanel focused = panels.contains(focusedContent) ? focusedContent
+                : lastContentPanel;
+        rowRenderer.render(panels, focused, rows, new ScheduledCommand() {
+
+            @Override
+            public void execute() {
+                // update vertical scroll position here. Content with a
+                // visible vertical scrollbar may have reseted it's scroll
+                // position to zero.
+                if (lastContentPanel != null) {
+                    lastContentPanel.resetVerticalScrollPosition();
+                }
+            }
+        });
+    }
+
+    /*
+     * Rows are a response to an outdated row request, and the viewport has
+     * moved on. Rows are already in the row cache, so the current viewport
+     * is rendered from the cache when possible. Otherwise the rows are
+     * dropped and the response to the newer request is waited for. If the
+     * newer requests don't get a response, current rows are requested.
+     */
+    private void updateOutdatedContentPanels() {
+        GWT.log("Outdated rows received");
+        if (renderFromCache(activeScrollIndex)) {
+            return;
+        }
+        if (respondedRowRequestSequence <= rootMetaData.responseSequence) {
+            cancelScrollRequest();
+            sendScrollRequest();
         }
     }
 
     private void initContentPanels() {
+        rowRenderer.cancel();
         contentPanel.clear();
         rowHeaderPanel = new ContentPanel(new RowHeaderContainer(), this, false);
         rowHeaderPanel.setHeaderContainer(rowHeaderColumnHeaderPanel);
@@ -323,13 +621,26 @@ public class VCustomScrollTable extends Composite implements
         for (int i = 0; i < rootMetaData.contentSize; i++) {
             last = (i == rootMetaData.contentSize - 1);
             // Vertical scroll bar may be visible only in the last content panel
-            ContentPanel c = new ContentPanel(this, last);
+            ContentPanel c = new ContentPanel(createRowContainer(), this,
+                    last);
             c.setHeaderContainer(headers.get(i));
             c.setRelatedHorizontalScrollable(headers.get(i));
             contents.add(i, c);
             contentPanel.add(c);
             c.initContent(rootMetaData.totalRowCount);
         }
+
+        List<ContentPanel> scrolledTogether = new ArrayList<ContentPanel>(
+                contents);
+        scrolledTogether.add(0, rowHeaderPanel);
+        scrollCoordinator.setContents(scrolledTogether);
+    }
+
+    private RowContainer createRowContainer() {
+        if (lightweightRows) {
+            return new HtmlRowContainer(this);
+        }
+        return new DefaultRowContainer(this);
     }
 
     private void initHeaderPanels() {
@@ -361,12 +672,55 @@ public class VCustomScrollTable extends Composite implements
      * be sent to the server and server will request repaint for visible rows.
      */
     private void measureAndSendRequestForVisibleRows() {
-        ContentPanel measure = new ContentPanel(this, false);
-        contentPanel.add(measure);
-        measure.initContent(rootMetaData.totalRowCount);
-        measuredRowHeight = measure.getMeasuredRowHeight();
-        eventHandler.onUpdateVisibleRowCount(getHeightAvailable()
-                / measuredRowHeight);
+        int visibleRows = countVisibleRows();
+        visibleRowCountDeferred = visibleRows < 0;
+        if (!visibleRowCountDeferred) {
+            sendVisibleRowCount(visibleRows);
+        }
+    }
+
+    private void sendVisibleRowCount(int visibleRows) {
+        requestedVisibleRows = visibleRows;
+        eventHandler.onUpdateVisibleRowCount(visibleRows, measuredRowHeight,
+                nextRowRequestSequence(true));
+    }
+
+    /*
+     * Requests rows for the new visible row count when the available height
+     * has changed. Rows on the screen are kept, server sends only the missing
+     * rows and extra rows are trimmed.
+     */
+    private void updateVisibleRowCountOnResize() {
+        if (contents.isEmpty() || height <= 0) {
+            return;
+        }
+        int visibleRows = countVisibleRows();
+        if (visibleRows < 0) {
+            return;
+        }
+        int lastRequested = (requestedVisibleRows < 0) ? getRequestedRows()
+                : requestedVisibleRows;
+        if (visibleRows != lastRequested) {
+            sendVisibleRowCount(visibleRows);
+        }
+    }
+
+    /*
+     * Returns count of the rows that fit in the available height, or -1 when
+     * the row height is not known. Row height is measured once per theme and
+     * shared by all tables. Measuring fails while the table is hidden or not
+     * laid out, then the earlier measured height is used.
+     */
+    private int countVisibleRows() {
+        int rowHeight = StyleHeightMeasurer.get().getHeight(
+                contentPanel.getElement(), StyleHeightMeasurer.ROW_STYLE);
+        if (rowHeight > 0) {
+            measuredRowHeight = rowHeight;
+        }
+        if (measuredRowHeight <= 0) {
+            return -1;
+        }
+        return getHeightAvailable() / measuredRowHeight;
     }
 
     private int getHeightAvailable() {
@@ -404,6 +758,10 @@ public class VCustomScrollTable extends Composite implements
             for (ContentPanel cp : contents) {
                 cp.setHeight(contentHeight);
             }
+            updateVisibleRowCountOnResize();
+        }
+        if (visibleRowCountDeferred) {
+            measureAndSendRequestForVisibleRows();
         }
 
         // TODO
@@ -422,14 +780,17 @@ public class VCustomScrollTable extends Composite implements
         // TODO
     }
 
-    /* This timer is scheduled when user stops the vertical scrolling. */
+    /*
+     * This timer sends the throttled row request when the previous request
+     * was sent too recently.
+     */
     private final Timer scrollTimer = new Timer() {
 
         @Override
         public void run() {
-            GWT.log("Timer.run after " + SCROLL_DELAY + "ms");
             GWT.log("Scrolling triggers a update");
-            eventHandler.onUpdateFirstRowIndex(activeScrollIndex);
+            scrollRequestScheduled = false;
+            sendScrollRequest();
         }
 
     };
@@ -437,14 +798,15 @@ public class VCustomScrollTable extends Composite implements
     /**
      * Handle scrolling for every widget. Vertical scrolling will also scroll
      * other parts of this widget. Horizontal scrolling does the same but leaves
-     * out all the other content panels than the target one.
+     * out all the other content panels than the target one. Positions are
+     * applied by the ScrollCoordinator on the next animation frame.
      * 
      * @param sc
      *            Target ScrollableContent
      * @param horizontalScrollPosition
      *            New horizontal scroll position
      * @param verticalScrollPosition
-     *            New vertical scroll position
+     *            New logical vertical scroll position (see ScrollScaler)
      * @param forceReset
      *            Force content update by sending a request to the server
      * @param silentScroll
@@ -456,24 +818,31 @@ public class VCustomScrollTable extends Composite implements
     public void scrollContent(ScrollableContent sc,
             int horizontalScrollPosition, int verticalScrollPosition,
             boolean forceReset, boolean silentScroll) {
-        sc.getRelatedScrollable().setScrollLeft(horizontalScrollPosition);
+        if (!silentScroll && sc instanceof ContentPanel) {
+            focusedContent = (ContentPanel) sc;
+        }
+        scrollCoordinator.scrollLeft(sc.getRelatedScrollable(),
+                horizontalScrollPosition);
         if (!silentScroll) {
-            if (rowHeaderPanel != null && !sc.equals(rowHeaderPanel)) {
-                rowHeaderPanel.setScrollTop(verticalScrollPosition, true);
-            }
-            for (ContentPanel otherCp : contents) {
-                if (otherCp.equals(sc)) {
-                    continue;
-                }
-                otherCp.setScrollTop(verticalScrollPosition, true);
-            }
-        } else {
-            return; // no need to continue
+            scrollCoordinator.scrollTop(sc, verticalScrollPosition,
+                    forceReset);
         }
+    }
 
+    /**
+     * Called by the ScrollCoordinator after all the contents are scrolled to
+     * the new vertical position. Sends a content update request when the
+     * buffered rows are not enough.
+     */
+    @Override
+    public void onScrollFrame(int verticalScrollPosition, boolean forceReset) {
         int prevContentVerScrollPos = contentVerScrollPos;
         contentVerScrollPos = verticalScrollPosition;
 
+        if (measuredRowHeight <= 0) {
+            // Row index of the position is not known before measuring
+            return;
+        }
         if (forceReset || prevContentVerScrollPos != contentVerScrollPos) {
 
             int oldIndex = prevContentVerScrollPos / measuredRowHeight;
@@ -492,21 +861,89 @@ public class VCustomScrollTable extends Composite implements
                 return;
             }
 
-            scrollTimer.cancel(); // cancel the active timer
+            if (!forceReset && renderFromCache(activeScrollIndex)) {
+                // Server only needs to know the new position
+                cancelScrollRequest();
+                scrollingVertically = 0;
+                eventHandler.onUpdateFirstRowIndexFromCache(activeScrollIndex,
+                        nextRowRequestSequence(false));
+                return;
+            }
 
             boolean immediate = forceReset;
             if (immediate) {
-                scrollingVertically = 0;
-                eventHandler.onUpdateFirstRowIndex(activeScrollIndex);
-
+                cancelScrollRequest();
+                sendScrollRequest();
             } else {
-                // re-schedule the timer.
-                GWT.log("Scrolling re-schedule");
-                scrollTimer.schedule(SCROLL_DELAY);
+                throttleScrollRequest();
             }
         }
     }
 
+    /*
+     * Send the row request now, if the previous one was sent long enough
+     * ago. Otherwise make sure that the request is sent as soon as the
+     * interval allows. Scrolling doesn't postpone an already scheduled
+     * request.
+     */
+    private void throttleScrollRequest() {
+        int elapsed = (int) (Duration.currentTimeMillis()
+                - lastScrollRequestTime);
+        if (elapsed >= minScrollRequestInterval) {
+            cancelScrollRequest();
+            sendScrollRequest();
+        } else if (!scrollRequestScheduled) {
+            GWT.log("Scrolling schedules a update");
+            scrollRequestScheduled = true;
+            scrollTimer.schedule(minScrollRequestInterval - elapsed);
+        }
+    }
+
+    private void sendScrollRequest() {
+        scrollingVertically = 0;
+        lastScrollRequestTime = Duration.currentTimeMillis();
+        eventHandler.onUpdateFirstRowIndex(activeScrollIndex,
+                nextRowRequestSequence(true));
+    }
+
+    /*
+     * Returns sequence number for a new row request. Server responds with
+     * rows to the request when responded is true.
+     */
+    private int nextRowRequestSequence(boolean responded) {
+        rowRequestSequence++;
+        if (responded) {
+            respondedRowRequestSequence = rowRequestSequence;
+        }
+        return rowRequestSequence;
+    }
+
+    private void cancelScrollRequest() {
+        scrollTimer.cancel();
+        scrollRequestScheduled = false;
+    }
+
+    /*
+     * Render the rows for the scroll index from the row cache. Range is the
+     * same that the server would paint: buffer rows before and after the
+     * visible rows. Returns false when any of the rows is not cached.
+     */
+    private boolean renderFromCache(int scrollIndex) {
+        int first = Math.max(0, scrollIndex - getBufferSize());
+        int end = Math.min(getTotalRowCount(), scrollIndex
+                + getRequestedRows() + getBufferSize());
+        if (end <= first) {
+            return false;
+        }
+        List<UIDL> rows = rowCache.getRange(first, end - first);
+        if (rows == null) {
+            return false;
+        }
+        GWT.log("Rendering rows " + first + "-" + end + " from the cache");
+        updateContentPanels(rows, true);
+        return true;
+    }
+
     @Override
     public boolean isHorizontalScrollbarVisible() {
         for (ContentPanel p : contents) {
@@ -532,6 +969,22 @@ public class VCustomScrollTable extends Composite implements
         return rootMetaData.bufferSize;
     }
 
+    @Override
+    public Map<String, Integer> getColumnWidthModel() {
+        return columnWidthModel;
+    }
+
+    @Override
+    public ValueDictionary getValueDictionary() {
+        return valueDictionary;
+    }
+
+    @Override
+    public void columnWidthModelChanged(Map<String, Integer> changedWidths) {
+        // Only the measured widths are sent, the server merges them
+        eventHandler.onUpdateColumnWidths(changedWidths);
+    }
+
     private int getTotalRowCount() {
         return rootMetaData.totalRowCount;
     }
@@ -565,6 +1018,152 @@ public class VCustomScrollTable extends Composite implements
         return renderingBase;
     }
 
+    /**
+     * Set true to render rows as HTML strings instead of a widget per cell.
+     * Content is created again when the value changes.
+     * 
+     * @param lightweightRows
+     */
+    public void setLightweightRows(boolean lightweightRows) {
+        if (this.lightweightRows != lightweightRows) {
+            this.lightweightRows = lightweightRows;
+            reconstructAll = true;
+        }
+    }
+
+    /**
+     * Set the maximum count of row requests sent per second while scrolling.
+     * 
+     * @param maxScrollRequestsPerSecond
+     */
+    public void setMaxScrollRequestsPerSecond(int maxScrollRequestsPerSecond) {
+        minScrollRequestInterval = 1000 / Math.max(1,
+                maxScrollRequestsPerSecond);
+    }
+
+    /**
+     * Set the column width model from the server. The model is replaced only
+     * when the version differs from the applied one, so unrelated state
+     * changes keep the widths measured by the client.
+     * 
+     * @param version
+     *            Version of the server side model
+     * @param columnWidths
+     *            Column widths by the property id key
+     */
+    public void setColumnWidthModel(int version,
+            Map<String, Integer> columnWidths) {
+        if (version == columnWidthModelVersion) {
+            return;
+        }
+        columnWidthModelVersion = version;
+        columnWidthModel.clear();
+        if (columnWidths != null) {
+            columnWidthModel.putAll(columnWidths);
+        }
+    }
+
+    @Override
+    public void onToggleCollapsed(int rowIndex) {
+        client.updateVariable(pid, VAR_TOGGLE_COLLAPSED, rowIndex, true);
+    }
+
+    @Override
+    public void onValueChange(String columnPid, int rowIndex, String newValue) {
+        // Server paints the row again, which replaces the cached one
+        client.updateVariable(pid, VAR_NEWVALUE, new String[] { columnPid,
+                String.valueOf(rowIndex), newValue }, true);
+    }
+
+    @Override
+    public void onRowHover(String rowKey, Element rowElement) {
+        if (!rowDescriptionsEnabled
+                || (rowElement == hoveredRowElement && (rowKey == null || rowKey
+                        .equals(hoveredRowKey)))) {
+            return;
+        }
+        rowDescriptionTimer.cancel();
+        hoveredRowKey = rowKey;
+        hoveredRowElement = rowElement;
+        if (rowKey == null) {
+            return;
+        }
+        // Row elements are recycled, so the title is always replaced
+        String description = rowDescriptions.get(rowKey);
+        rowElement.setTitle((description != null) ? description : "");
+        if (description == null) {
+            rowDescriptionTimer.schedule(ROW_DESCRIPTION_DELAY);
+        }
+    }
+
+    /**
+     * Set the description of the row requested on hover. Shown as the title
+     * of the row, if the pointer is still on it.
+     * 
+     * @param rowKey
+     * @param description
+     *            Description, or null when the row doesn't have one
+     */
+    public void setRowDescription(String rowKey, String description) {
+        String value = (description != null) ? description : "";
+        rowDescriptions.put(rowKey, value);
+        if (rowKey.equals(hoveredRowKey) && hoveredRowElement != null) {
+            hoveredRowElement.setTitle(value);
+        }
+    }
+
+    /**
+     * Set true when the rows have descriptions. Descriptions are requested
+     * from the server when the pointer lingers on a row.
+     * 
+     * @param rowDescriptionsEnabled
+     */
+    public void setRowDescriptionsEnabled(boolean rowDescriptionsEnabled) {
+        if (this.rowDescriptionsEnabled != rowDescriptionsEnabled) {
+            this.rowDescriptionsEnabled = rowDescriptionsEnabled;
+            rowDescriptions.clear();
+            resetRowHover();
+        }
+    }
+
+    /*
+     * Forgets the hovered row. Row elements are recycled for other items when
+     * the rows are rendered, without a new hover event if the pointer doesn't
+     * move. Title of the hovered element belongs to the previous item, so
+     * it's removed too.
+     */
+    private void resetRowHover() {
+        rowDescriptionTimer.cancel();
+        if (hoveredRowElement != null) {
+            hoveredRowElement.setTitle("");
+        }
+        hoveredRowKey = null;
+        hoveredRowElement = null;
+    }
+
+    @Override
+    public void requestFullValue(String rowKey, String columnPid,
+            FullValueCallback callback) {
+        fullValueCallbacks.put(rowKey + "/" + columnPid, callback);
+        eventHandler.onRequestFullValue(rowKey, columnPid);
+    }
+
+    /**
+     * Set the full value of a truncated cell requested earlier.
+     * 
+     * @param rowKey
+     * @param columnPid
+     * @param value
+     *            Full value, or null when the row or the column is gone
+     */
+    public void setFullValue(String rowKey, String columnPid, String value) {
+        FullValueCallback callback = fullValueCallbacks.remove(rowKey + "/"
+                + columnPid);
+        if (callback != null) {
+            callback.onFullValue(value);
+        }
+    }
+
     public void setEventHandler(MultiScrollTableEventHandler eventHandler) {
         this.eventHandler = eventHandler;
     }
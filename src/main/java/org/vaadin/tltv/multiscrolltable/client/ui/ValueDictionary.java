@@ -0,0 +1,85 @@
+/*
+ * Copyright 2013 Tomi Virtanen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vaadin.tltv.multiscrolltable.client.ui;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.google.gwt.core.client.GWT;
+import com.vaadin.client.UIDL;
+
+/**
+ * <b>ValueDictionary</b> keeps the repeated cell values that the server has
+ * sent once in a string table. Cells of the later responses refer to them by
+ * the index. The dictionary is kept across responses until the server starts
+ * a new one.
+ */
+public class ValueDictionary {
+
+    private final List<String> values = new ArrayList<String>();
+
+    /**
+     * Update the dictionary from the rows UIDL. Entries from the offset
+     * onwards are replaced by the new entries of the UIDL.
+     * 
+     * @param uidlRows
+     * @return True when earlier entries were dropped. Cached rows may refer
+     *         to them and are not valid anymore.
+     */
+    public boolean update(UIDL uidlRows) {
+        if (!uidlRows.hasAttribute(VCustomScrollTable.ATTR_DICTIONARY_OFFSET)) {
+            return false;
+        }
+        int offset = uidlRows
+                .getIntAttribute(VCustomScrollTable.ATTR_DICTIONARY_OFFSET);
+        boolean dropped = offset < values.size();
+        if (dropped) {
+            values.subList(offset, values.size()).clear();
+        } else if (offset > values.size()) {
+            GWT.log("Value dictionary is missing entries " + values.size()
+                    + "-" + (offset - 1) + ", values are shown empty.");
+            while (values.size() < offset) {
+                values.add("");
+            }
+        }
+        if (uidlRows.hasAttribute(VCustomScrollTable.ATTR_DICTIONARY)) {
+            Collections.addAll(values, uidlRows
+                    .getStringArrayAttribute(VCustomScrollTable.ATTR_DICTIONARY));
+        }
+        return dropped;
+    }
+
+    /**
+     * Returns the value of the value UIDL, either from the dictionary or the
+     * text of the UIDL.
+     * 
+     * @param valueUidl
+     * @return
+     */
+    public String getValue(UIDL valueUidl) {
+        if (!valueUidl.hasAttribute(VCustomScrollTable.ATTR_DICTIONARY_INDEX)) {
+            return valueUidl.getChildString(0);
+        }
+        int index = valueUidl
+                .getIntAttribute(VCustomScrollTable.ATTR_DICTIONARY_INDEX);
+        return (index < values.size()) ? values.get(index) : "";
+    }
+
+    public int size() {
+        return values.size();
+    }
+}
@@ -30,6 +30,10 @@ public class Column {
 
     private boolean readonly;
 
+    private int width = -1;
+
+    private float expandRatio = 0;
+
     public Column() {
     }
 
@@ -44,6 +48,7 @@ public class Column {
 
     public void setCaption(String caption) {
         this.caption = caption;
+        fireHeaderCellChange();
     }
 
     public boolean isReadonly() {
@@ -52,6 +57,49 @@ public class Column {
 
     public void setReadonly(boolean readonly) {
         this.readonly = readonly;
+        fireHeaderCellChange();
+    }
+
+    /**
+     * Get fixed width in pixels. Returns -1 when the width is undefined.
+     * 
+     * @return
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Set fixed width in pixels. Column with a fixed width is not sized by its
+     * content. Use -1 to size the column by its content.
+     * 
+     * @param width
+     */
+    public void setWidth(int width) {
+        this.width = width;
+        fireHeaderCellChange();
+    }
+
+    /**
+     * Get expand ratio. Returns 0 when the column doesn't expand.
+     * 
+     * @return
+     */
+    public float getExpandRatio() {
+        return expandRatio;
+    }
+
+    /**
+     * Set expand ratio. Columns with an expand ratio share the space left over
+     * by the other columns in the scroll content by their ratios, but are
+     * never narrower than their caption. Expand ratio is used only when the
+     * column doesn't have a fixed width.
+     * 
+     * @param expandRatio
+     */
+    public void setExpandRatio(float expandRatio) {
+        this.expandRatio = expandRatio;
+        fireHeaderCellChange();
     }
 
     public Object getColumnId() {
@@ -70,4 +118,10 @@ public class Column {
         this.columnGroup = columnGroup;
     }
 
+    private void fireHeaderCellChange() {
+        if (columnGroup != null) {
+            columnGroup.fireHeaderCellChange(this);
+        }
+    }
+
 }
@@ -0,0 +1,166 @@
+/*
+ * Copyright 2013 Tomi Virtanen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.vaadin.tltv.multiscrolltable.ui;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * <b>ColumnDiff</b> describes the changes between two ordered lists of column
+ * ids as removals and insertions. Moved columns are described as a removal
+ * followed by an insertion. Applying all removals in the given (descending)
+ * order and then all insertions in the given (ascending) order to the old list
+ * results the new list.
+ */
+class ColumnDiff implements Serializable {
+
+    private static final long serialVersionUID = -4183406466713389563L;
+
+    private final List<Integer> removedIndexes = new ArrayList<Integer>();
+
+    private final List<Integer> insertedIndexes = new ArrayList<Integer>();
+
+    private final Set<Object> addedIds = new HashSet<Object>();
+
+    /**
+     * Compute a diff between the old and the new column id list. Runs in
+     * O(n log n) time.
+     * 
+     * @param oldIds
+     *            Old ordered column ids
+     * @param newIds
+     *            New ordered column ids
+     */
+    public ColumnDiff(List<?> oldIds, List<?> newIds) {
+        Map<Object, Integer> oldIndexes = new HashMap<Object, Integer>();
+        int index = 0;
+        for (Object id : oldIds) {
+            oldIndexes.put(id, index++);
+        }
+
+        // Old indexes of the columns that exist in both lists, in the new
+        // order.
+        int[] keptOldIndexes = new int[newIds.size()];
+        int[] keptNewIndexes = new int[newIds.size()];
+        int kept = 0;
+        index = 0;
+        for (Object id : newIds) {
+            Integer oldIndex = oldIndexes.remove(id);
+            if (oldIndex == null) {
+                addedIds.add(id);
+                insertedIndexes.add(index);
+            } else {
+                keptOldIndexes[kept] = oldIndex;
+                keptNewIndexes[kept] = index;
+                kept++;
+            }
+            index++;
+        }
+        // Whatever is left in the map doesn't exist in the new list.
+        removedIndexes.addAll(oldIndexes.values());
+
+        // Columns in the longest increasing run of old indexes can stay where
+        // they are. Rest of the kept columns are moved.
+        boolean[] stable = longestIncreasingSubsequence(keptOldIndexes, kept);
+        for (int i = 0; i < kept; i++) {
+            if (!stable[i]) {
+                removedIndexes.add(keptOldIndexes[i]);
+                insertedIndexes.add(keptNewIndexes[i]);
+            }
+        }
+        Collections.sort(removedIndexes, Collections.reverseOrder());
+        Collections.sort(insertedIndexes);
+    }
+
+    /*
+     * Marks the members of one longest strictly increasing subsequence of the
+     * first 'length' values.
+     */
+    private static boolean[] longestIncreasingSubsequence(int[] values,
+            int length) {
+        int[] tails = new int[length];
+        int[] predecessors = new int[length];
+        int size = 0;
+        for (int i = 0; i < length; i++) {
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (values[tails[mid]] < values[i]) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            predecessors[i] = (low > 0) ? tails[low - 1] : -1;
+            tails[low] = i;
+            if (low == size) {
+                size++;
+            }
+        }
+        boolean[] members = new boolean[length];
+        int i = (size > 0) ? tails[size - 1] : -1;
+        while (i >= 0) {
+            members[i] = true;
+            i = predecessors[i];
+        }
+        return members;
+    }
+
+    /**
+     * Returns true when the lists are identical.
+     * 
+     * @return
+     */
+    public boolean isEmpty() {
+        return removedIndexes.isEmpty() && insertedIndexes.isEmpty();
+    }
+
+    /**
+     * Returns indexes in the old list to remove, in descending order.
+     * 
+     * @return
+     */
+    public List<Integer> getRemovedIndexes() {
+        return Collections.unmodifiableList(removedIndexes);
+    }
+
+    /**
+     * Returns indexes in the new list to insert, in ascending order. Includes
+     * moved columns.
+     * 
+     * @return
+     */
+    public List<Integer> getInsertedIndexes() {
+        return Collections.unmodifiableList(insertedIndexes);
+    }
+
+    /**
+     * Returns ids that don't exist in the old list at all.
+     * 
+     * @return
+     */
+    public Set<Object> getAddedIds() {
+        return Collections.unmodifiableSet(addedIds);
+    }
+}
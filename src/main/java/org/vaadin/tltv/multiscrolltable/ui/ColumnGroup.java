@@ -27,6 +27,8 @@ public class ColumnGroup {
 
     private ScrollContent scrollContent;
 
+    private ColumnGroup parent;
+
     private final Set<Column> columns = new LinkedHashSet<Column>();
 
     /**
@@ -46,6 +48,25 @@ public class ColumnGroup {
      */
     public void setCaption(String caption) {
         this.caption = caption;
+        fireHeaderCellChange(this);
+    }
+
+    /**
+     * Get parent column group.
+     * 
+     * @return
+     */
+    public ColumnGroup getParent() {
+        return parent;
+    }
+
+    /**
+     * Set a new parent column group.
+     * 
+     * @param parent
+     */
+    public void setParent(ColumnGroup parent) {
+        this.parent = parent;
     }
 
     /**
@@ -118,10 +139,31 @@ public class ColumnGroup {
     }
 
     protected void fireScrollContentChange() {
-        if (getScrollContent() != null
-                && getScrollContent().getScrollContentChangeListener() != null) {
-            getScrollContent().getScrollContentChangeListener()
-                    .scrollContentChanged();
+        ScrollContentChangeListener listener = getScrollContentChangeListener();
+        if (listener != null) {
+            listener.scrollContentChanged();
+        }
+    }
+
+    protected void fireHeaderCellChange(Object headerCell) {
+        ScrollContentChangeListener listener = getScrollContentChangeListener();
+        if (listener != null) {
+            listener.headerCellChanged(headerCell);
+        }
+    }
+
+    /*
+     * Sub groups of a HierarchicalColumnGroup don't have a scroll content, so
+     * look it up from the top most parent group.
+     */
+    private ScrollContentChangeListener getScrollContentChangeListener() {
+        ColumnGroup group = this;
+        while (group.getScrollContent() == null && group.getParent() != null) {
+            group = group.getParent();
+        }
+        if (group.getScrollContent() != null) {
+            return group.getScrollContent().getScrollContentChangeListener();
         }
+        return null;
     }
 }
@@ -17,29 +17,53 @@
 package org.vaadin.tltv.multiscrolltable.ui;
 
 import static org.vaadin.tltv.multiscrolltable.client.ui.TableUtil.defaultString;
+import static org.vaadin.tltv.multiscrolltable.client.ui.VCustomScrollTable.ATTR_BASE_VERSION;
 import static org.vaadin.tltv.multiscrolltable.client.ui.VCustomScrollTable.ATTR_BUFFERSIZE;
+import static org.vaadin.tltv.multiscrolltable.client.ui.VCustomScrollTable.ATTR_CACHED;
 import static org.vaadin.tltv.multiscrolltable.client.ui.VCustomScrollTable.ATTR_CAPTION;
 import static org.vaadin.tltv.multiscrolltable.client.ui.VCustomScrollTable.ATTR_CHECK_SPACE_AVAILABLE;
 import static org.vaadin.tltv.multiscrolltable.client.ui.VCustomScrollTable.ATTR_CHILDRENS_ALLOWED;
 import static org.vaadin.tltv.multiscrolltable.client.ui.VCustomScrollTable.ATTR_COLS;
-import static org.vaadin.tltv.multiscrolltable.client.ui.VCustomScrollTable.ATTR_COLUMN_STRUCTURE_CHANGED;
+import static org.vaadin.tltv.multiscrolltable.client.ui.VCustomScrollTable.ATTR_COLSPAN;
+import static org.vaadin.tltv.multiscrolltable.client.ui.VCustomScrollTable.ATTR_DATA_VERSION;
+import static org.vaadin.tltv.multiscrolltable.client.ui.VCustomScrollTable.ATTR_DECIMAL_SEPARATOR;
 import static org.vaadin.tltv.multiscrolltable.client.ui.VCustomScrollTable.ATTR_DEPTH;
-import static org.vaadin.tltv.multiscrolltable.client.ui.VCustomScrollTable.ATTR_DESCRIPTION;
+import static org.vaadin.tltv.multiscrolltable.client.ui.VCustomScrollTable.ATTR_DICTIONARY;
+import static org.vaadin.tltv.multiscrolltable.client.ui.VCustomScrollTable.ATTR_DICTIONARY_INDEX;
+import static org.vaadin.tltv.multiscrolltable.client.ui.VCustomScrollTable.ATTR_DICTIONARY_OFFSET;
+import static org.vaadin.tltv.multiscrolltable.client.ui.VCustomScrollTable.ATTR_EXPAND_RATIO;
+import static org.vaadin.tltv.multiscrolltable.client.ui.VCustomScrollTable.ATTR_FIRST_POSITION;
+import static org.vaadin.tltv.multiscrolltable.client.ui.VCustomScrollTable.ATTR_GROUPING_SEPARATOR;
 import static org.vaadin.tltv.multiscrolltable.client.ui.VCustomScrollTable.ATTR_IMMEDIATE;
 import static org.vaadin.tltv.multiscrolltable.client.ui.VCustomScrollTable.ATTR_INDEX;
+import static org.vaadin.tltv.multiscrolltable.client.ui.VCustomScrollTable.ATTR_KEY;
+import static org.vaadin.tltv.multiscrolltable.client.ui.VCustomScrollTable.ATTR_LEVELS;
+import static org.vaadin.tltv.multiscrolltable.client.ui.VCustomScrollTable.ATTR_NUMBER_PATTERN;
+import static org.vaadin.tltv.multiscrolltable.client.ui.VCustomScrollTable.ATTR_OFFSET;
 import static org.vaadin.tltv.multiscrolltable.client.ui.VCustomScrollTable.ATTR_OPEN;
 import static org.vaadin.tltv.multiscrolltable.client.ui.VCustomScrollTable.ATTR_PID;
 import static org.vaadin.tltv.multiscrolltable.client.ui.VCustomScrollTable.ATTR_READONLY;
+import static org.vaadin.tltv.multiscrolltable.client.ui.VCustomScrollTable.ATTR_REMOVED_COLS;
+import static org.vaadin.tltv.multiscrolltable.client.ui.VCustomScrollTable.ATTR_RENDERER;
 import static org.vaadin.tltv.multiscrolltable.client.ui.VCustomScrollTable.ATTR_REQFIRSTCOL;
 import static org.vaadin.tltv.multiscrolltable.client.ui.VCustomScrollTable.ATTR_REQFIRSTROW;
+import static org.vaadin.tltv.multiscrolltable.client.ui.VCustomScrollTable.ATTR_ROW;
 import static org.vaadin.tltv.multiscrolltable.client.ui.VCustomScrollTable.ATTR_ROWS;
+import static org.vaadin.tltv.multiscrolltable.client.ui.VCustomScrollTable.ATTR_ROWSPAN;
 import static org.vaadin.tltv.multiscrolltable.client.ui.VCustomScrollTable.ATTR_ROWS_CHANGED;
+import static org.vaadin.tltv.multiscrolltable.client.ui.VCustomScrollTable.ATTR_ROW_REQUEST_SEQUENCE;
 import static org.vaadin.tltv.multiscrolltable.client.ui.VCustomScrollTable.ATTR_ROW_STRUCTURE_CHANGED;
 import static org.vaadin.tltv.multiscrolltable.client.ui.VCustomScrollTable.ATTR_SCROLL_GROUPS;
 import static org.vaadin.tltv.multiscrolltable.client.ui.VCustomScrollTable.ATTR_TOTALROWS;
+import static org.vaadin.tltv.multiscrolltable.client.ui.VCustomScrollTable.ATTR_TRUNCATED;
+import static org.vaadin.tltv.multiscrolltable.client.ui.VCustomScrollTable.ATTR_VERSION;
+import static org.vaadin.tltv.multiscrolltable.client.ui.VCustomScrollTable.ATTR_WIDTH;
 import static org.vaadin.tltv.multiscrolltable.client.ui.VCustomScrollTable.TAG_COLUMN;
 import static org.vaadin.tltv.multiscrolltable.client.ui.VCustomScrollTable.TAG_COLUMNGROUP;
 import static org.vaadin.tltv.multiscrolltable.client.ui.VCustomScrollTable.TAG_COLUMNS;
+import static org.vaadin.tltv.multiscrolltable.client.ui.VCustomScrollTable.TAG_COLUMN_DIFF;
+import static org.vaadin.tltv.multiscrolltable.client.ui.VCustomScrollTable.TAG_HEADER_CELL;
+import static org.vaadin.tltv.multiscrolltable.client.ui.VCustomScrollTable.TAG_HEADER_CELLS;
 import static org.vaadin.tltv.multiscrolltable.client.ui.VCustomScrollTable.TAG_ROWS;
 import static org.vaadin.tltv.multiscrolltable.client.ui.VCustomScrollTable.TAG_SCROLLCONTENT;
 import static org.vaadin.tltv.multiscrolltable.client.ui.VCustomScrollTable.TAG_TR;
@@ -57,14 +81,17 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import org.vaadin.tltv.multiscrolltable.client.MultiScrollTableClientRpc;
 import org.vaadin.tltv.multiscrolltable.client.MultiScrollTableServerRpc;
 import org.vaadin.tltv.multiscrolltable.client.MultiScrollTableState;
+import org.vaadin.tltv.multiscrolltable.client.ui.CellRendererRegistry;
 
 import com.vaadin.data.Container;
 import com.vaadin.data.Container.Hierarchical;
@@ -98,6 +125,29 @@ public class CustomScrollTable extends AbstractComponent implements
      */
     protected final KeyMapper columnIdMap = new KeyMapper();
 
+    /*
+     * Column width model by the property id. Shared with the client by the
+     * property id keys in the state.
+     */
+    private final Map<Object, Integer> columnWidths = new HashMap<Object, Integer>();
+
+    /*
+     * Keymapper for the Columns and ColumnGroups painted in the header. Keys
+     * are used for patching a single header cell.
+     */
+    private final KeyMapper<Object> headerCellMap = new KeyMapper<Object>();
+    private final Set<Object> paintedHeaderCells = new HashSet<Object>();
+
+    /*
+     * Keymapper for the item ids of the painted rows. Client matches rows to
+     * the existing row widgets by the key. Client's row cache keeps rows of
+     * the same data version with their keys, so keys of the items painted
+     * with the version are kept until the version changes.
+     */
+    private final KeyMapper<Object> rowKeyMap = new KeyMapper<Object>();
+    private Set<Object> paintedRowItemIds = new HashSet<Object>();
+    private Set<Object> keyedRowItemIds = new HashSet<Object>();
+
     private final Set<ScrollContent> scrollContents = new LinkedHashSet<ScrollContent>();
 
     protected int requestedRowsToPaint = 5;
@@ -107,10 +157,22 @@ public class CustomScrollTable extends AbstractComponent implements
 
     protected int requestedFirstColToPaint = 0;
 
-    private Collection<Object> visibleColumns = new LinkedList<Object>();
+    private List<Object> visibleColumns = Collections.emptyList();
 
     protected Object[][] pageBuffer = null;
 
+    /*
+     * Property ids of the value arrays in the pageBuffer, in the same order.
+     */
+    private List<Object> pageBufferColumns = Collections.emptyList();
+
+    /*
+     * Visible columns that the client's header was last painted with. Used for
+     * painting only the inserted and removed header cells of the default
+     * scroll content.
+     */
+    private List<Object> paintedVisibleColumns = null;
+
     protected Hierarchical datasource;
 
     private Object rowHeaderPropertyId;
@@ -118,15 +180,83 @@ public class CustomScrollTable extends AbstractComponent implements
     private Object rowDescriptionPropertyId;
 
     /**
-     * When true, during the next paint, client will measure the available space
-     * for the rows first and request new data to paint.
+     * When true, during the next paint, rows are painted for an estimated
+     * count of the visible rows and client will measure the available space
+     * for the rows. Client requests new data to paint only when the estimate
+     * was wrong.
      */
     protected boolean measureSpaceForRowsAvailable = true;
 
-    protected boolean columnStructureChanged = true;
+    /**
+     * Default row height in pixels for estimating the count of the visible
+     * rows on the first paint. Same as the default height of the rows in the
+     * theme.
+     */
+    public static final int DEFAULT_ESTIMATED_ROW_HEIGHT = 25;
+
+    /** Appended to the texts that are truncated by the maximum length. */
+    public static final String TRUNCATION_INDICATOR = "\u2026";
+
+    /*
+     * Session attribute for the row height last measured by any table's
+     * client. Used for the estimate when the row height is not set.
+     */
+    private static final String MEASURED_ROW_HEIGHT_ATTRIBUTE = CustomScrollTable.class
+            .getName() + ".measuredRowHeight";
+
+    private int estimatedRowHeight = -1;
+
+    /*
+     * Version of the header layout. Incremented on every structural change.
+     * Header tree is painted only when the version differs from the painted
+     * one.
+     */
+    private int headerVersion = 0;
+    private int paintedHeaderVersion = -1;
+
+    /*
+     * Version of the row data. Incremented whenever painted rows may change.
+     * Client drops its cached rows when the version differs.
+     */
+    private int dataVersion = 0;
+
+    /*
+     * Sequence number of the last handled row request from the client. It is
+     * painted back, so the client can skip responses to outdated requests.
+     */
+    private int rowRequestSequence = 0;
+    private boolean paintedReadOnly;
+
+    /*
+     * Columns and ColumnGroups with a changed caption or readonly flag since
+     * the last paint.
+     */
+    private final Set<Object> changedHeaderCells = new LinkedHashSet<Object>();
+
     protected boolean rowStructureChanged = true;
     protected boolean rowsChanged = true;
 
+    /*
+     * When true, only the visible row count has changed since the last paint.
+     * Rows that the client already has are painted without the values and
+     * the client takes them from its row cache.
+     */
+    private boolean visibleRowCountChanged = false;
+    private int paintedDataVersion = -1;
+
+    /*
+     * Repeated cell values that the client has in its value dictionary, by
+     * the index. Cells with these values are painted as the index.
+     */
+    private final Map<String, Integer> valueDictionary = new HashMap<String, Integer>();
+    private boolean dictionaryEncoding = false;
+    private boolean valueDictionaryReset = true;
+
+    private static final int MAX_DICTIONARY_SIZE = 2000;
+    private static final int MIN_DICTIONARY_VALUE_LENGTH = 3;
+
+    private PaintMetrics paintMetrics;
+
     /*
      * This map's purpose is to keep track of the old values. Every value change
      * will change the value in the map. Key is a property id.
@@ -140,19 +270,72 @@ public class CustomScrollTable extends AbstractComponent implements
     private final MultiScrollTableServerRpc rpc = new MultiScrollTableServerRpc() {
 
         @Override
-        public void updateFirstRowIndex(Integer newFirstRowIndex) {
-            handleRowVisibilityChange(newFirstRowIndex, null);
+        public void updateFirstRowIndex(Integer newFirstRowIndex,
+                Integer sequence) {
+            if (acceptRowRequest(sequence)) {
+                handleRowVisibilityChange(newFirstRowIndex, null);
+            }
+        }
+
+        @Override
+        public void updateFirstRowIndexFromCache(Integer newFirstRowIndex,
+                Integer sequence) {
+            // Client has already rendered the rows, just keep the position in
+            // sync.
+            if (acceptRowRequest(sequence)
+                    && updateRowVisibility(newFirstRowIndex, null)) {
+                pageBuffer = null;
+            }
+        }
+
+        @Override
+        public void updateColumnWidths(Map<String, Integer> widths) {
+            for (Map.Entry<String, Integer> e : widths.entrySet()) {
+                Object propertyId = columnIdMap.get(e.getKey());
+                if (propertyId != null && e.getValue() != null) {
+                    columnWidths.put(propertyId, e.getValue());
+                }
+            }
+            // State is not updated, the client has the widths already
+        }
+
+        @Override
+        public void requestFullValue(String rowKey, String columnPid) {
+            Object itemId = rowKeyMap.get(rowKey);
+            Object propertyId = columnIdMap.get(columnPid);
+            Property p = (itemId != null && propertyId != null) ? datasource
+                    .getContainerProperty(itemId, propertyId) : null;
+            String value = (p != null) ? formatPropertyValue(itemId, p,
+                    propertyId) : null;
+            getRpcProxy(MultiScrollTableClientRpc.class).setFullValue(rowKey,
+                    columnPid, value);
         }
 
         @Override
-        public void updateVisibleRowCount(Integer newVisibleRows) {
-            handleRowVisibilityChange(null, newVisibleRows);
+        public void requestRowDescription(String rowKey) {
+            Object itemId = rowKeyMap.get(rowKey);
+            String description = (itemId != null) ? getRowDescription(itemId)
+                    : null;
+            getRpcProxy(MultiScrollTableClientRpc.class).setRowDescription(
+                    rowKey, description);
+        }
+
+        @Override
+        public void updateVisibleRowCount(Integer newVisibleRows,
+                Integer rowHeight, Integer sequence) {
+            cacheMeasuredRowHeight(rowHeight);
+            if (acceptRowRequest(sequence)) {
+                handleRowVisibilityChange(null, newVisibleRows);
+            }
         }
 
         @Override
         public void updateFirstRowIndexAndVisibleRowCount(
-                Integer newFirstRowIndex, Integer newVisibleRows) {
-            handleRowVisibilityChange(newFirstRowIndex, newVisibleRows);
+                Integer newFirstRowIndex, Integer newVisibleRows,
+                Integer sequence) {
+            if (acceptRowRequest(sequence)) {
+                handleRowVisibilityChange(newFirstRowIndex, newVisibleRows);
+            }
         }
 
     };
@@ -166,17 +349,47 @@ public class CustomScrollTable extends AbstractComponent implements
                 throws ParseException;
     }
 
+    /**
+     * Formatter whose output can be reproduced on the client by a
+     * DecimalFormat pattern and the separators. With client side number
+     * formatting enabled, numbers of the columns with a pattern are sent raw
+     * and formatted by the client.
+     */
+    public interface PatternFormatter extends Formatter {
+
+        /**
+         * Returns a DecimalFormat pattern for the numbers of the column, or
+         * null when the numbers need to be formatted on the server.
+         * 
+         * @param propertyId
+         * @return
+         */
+        String getPattern(Object propertyId);
+
+        char getDecimalSeparator();
+    }
+
     private Formatter formatter = DEFAULT_FORMATTER;
 
-    public static final Formatter DEFAULT_FORMATTER = new Formatter() {
+    private boolean clientSideNumberFormatting = false;
+
+    // Client side cell renderer names by the property id
+    private final Map<Object, String> columnRenderers = new HashMap<Object, String>();
+
+    // Maximum lengths of the sent texts by the property id
+    private final Map<Object, Integer> columnMaxTextLengths = new HashMap<Object, Integer>();
+
+    public static final Formatter DEFAULT_FORMATTER = new PatternFormatter() {
 
         private static final long serialVersionUID = 884515870065895819L;
         private final DecimalFormat decimalFormat = new DecimalFormat();
+        private final String pattern;
 
         {
             DecimalFormatSymbols symbols = new DecimalFormatSymbols();
             symbols.setGroupingSeparator(' ');
             decimalFormat.setDecimalFormatSymbols(symbols);
+            pattern = decimalFormat.toPattern();
         }
 
         @Override
@@ -185,6 +398,17 @@ public class CustomScrollTable extends AbstractComponent implements
                     .getGroupingSeparator();
         }
 
+        @Override
+        public char getDecimalSeparator() {
+            return decimalFormat.getDecimalFormatSymbols()
+                    .getDecimalSeparator();
+        }
+
+        @Override
+        public String getPattern(Object propertyId) {
+            return pattern;
+        }
+
         @Override
         public String format(Object number, Object propertyId) {
             return decimalFormat.format(number);
@@ -209,18 +433,39 @@ public class CustomScrollTable extends AbstractComponent implements
     /*
      * Gets and resets default scroll content. Scroll content will contain a
      * single caption-less ColumnGroup which contains all visible columns.
+     * Columns that are still visible keep their Column instance.
      */
     private ScrollContent getAndResetDefaultScrollContent() {
-        Column c;
+        Map<Object, Column> oldColumns = new HashMap<Object, Column>();
+        for (Column c : defaultColumnGroup.getColumns()) {
+            oldColumns.put(c.getColumnId(), c);
+        }
         defaultColumnGroup.removeAllColumns();
         for (Object o : getVisibleColumns()) {
-            c = new Column(columnIdMap.key(o));
-            c.setCaption(o.toString());
-            defaultColumnGroup.addColumn(c);
+            Column c = oldColumns.remove(o);
+            defaultColumnGroup.addColumn((c != null) ? c : new Column(o));
+        }
+        for (Column c : oldColumns.values()) {
+            headerCellMap.remove(c);
+            paintedHeaderCells.remove(c);
         }
         return defaultScrollContent;
     }
 
+    /*
+     * Rebuilds the default scroll content for the current visible columns
+     * without firing a scroll content change.
+     */
+    private void syncDefaultScrollContent() {
+        defaultScrollContent.setScrollContentChangeListener(null);
+        getAndResetDefaultScrollContent();
+        defaultScrollContent.setScrollContentChangeListener(this);
+    }
+
+    private boolean isDefaultScrollContentInUse() {
+        return scrollContents.contains(defaultScrollContent);
+    }
+
     private interface ContainerStrategy extends Serializable {
         public int size();
 
@@ -473,10 +718,27 @@ public class CustomScrollTable extends AbstractComponent implements
 
     public void setFormatter(Formatter formatter) {
         this.formatter = formatter;
+        if (isClientSideNumberFormatting()) {
+            // Number patterns of the columns may have changed
+            headerVersion++;
+            requestRefreshDataToPaint();
+        }
+    }
+
+    private void updateColumnWidthState() {
+        Map<String, Integer> widths = new HashMap<String, Integer>();
+        for (Map.Entry<Object, Integer> e : columnWidths.entrySet()) {
+            widths.put(columnIdMap.key(e.getKey()), e.getValue());
+        }
+        getState().columnWidths = widths;
+        getState().columnWidthsVersion++;
     }
 
     @Override
     public void paintContent(PaintTarget target) throws PaintException {
+        if (measureSpaceForRowsAvailable) {
+            estimateVisibleRowCount();
+        }
         final Object[] colids = getVisibleColumns();
         final Object[][] cells = getVisibleCells();
         final int cols = colids.length;
@@ -489,8 +751,9 @@ public class CustomScrollTable extends AbstractComponent implements
         target.addAttribute(ATTR_REQFIRSTCOL, requestedFirstColToPaint);
         target.addAttribute(ATTR_BUFFERSIZE, ROW_BUFFER_SIZE);
         target.addAttribute(ATTR_SCROLL_GROUPS, scrollContents.size());
+        target.addAttribute(ATTR_DATA_VERSION, dataVersion);
+        target.addAttribute(ATTR_ROW_REQUEST_SEQUENCE, rowRequestSequence);
 
-        boolean doPaintRows = !measureSpaceForRowsAvailable;
         if (measureSpaceForRowsAvailable) {
             target.addAttribute(ATTR_CHECK_SPACE_AVAILABLE, true);
             measureSpaceForRowsAvailable = false;
@@ -498,70 +761,225 @@ public class CustomScrollTable extends AbstractComponent implements
 
         paintColumns(target);
         paintFloatingRows(target);
-        if (doPaintRows) {
-            paintRows(target, cells, cols);
+        paintRows(target, cells, cols);
+
+    }
+
+    /*
+     * Update count of the rows to paint by the height of the component and
+     * the estimated row height. Count is not changed when the height is not
+     * in pixels.
+     */
+    private void estimateVisibleRowCount() {
+        if (getHeight() < 0 || getHeightUnits() != Unit.PIXELS) {
+            return;
         }
+        int rows = Math.max(1, (int) getHeight() / getEstimatedRowHeight());
+        if (rows != requestedRowsToPaint) {
+            requestedRowsToPaint = rows;
+            rowStructureChanged = true;
+            pageBuffer = null;
+        }
+    }
 
+    private void cacheMeasuredRowHeight(Integer rowHeight) {
+        if (rowHeight != null && rowHeight > 0 && getSession() != null) {
+            getSession().setAttribute(MEASURED_ROW_HEIGHT_ATTRIBUTE, rowHeight);
+        }
     }
 
     /*
-     * Add column data to the UIDL
+     * Add column data to the UIDL. Header tree is painted only when its
+     * version has changed or the client needs a full repaint. Otherwise only
+     * the changed header cells are painted.
      */
     private void paintColumns(PaintTarget target) throws PaintException {
-        target.startTag(TAG_COLUMNS);
-        if (columnStructureChanged) {
-            target.addAttribute(ATTR_COLUMN_STRUCTURE_CHANGED, true);
+        if (headerVersion == paintedHeaderVersion
+                && paintedVisibleColumns != null
+                && !paintedVisibleColumns.equals(visibleColumns)) {
+            headerVersion++;
+            if (isDefaultScrollContentInUse()
+                    && !paintedVisibleColumns.isEmpty()
+                    && !visibleColumns.isEmpty() && !target.isFullRepaint()) {
+                paintColumnDiff(target, new ColumnDiff(paintedVisibleColumns,
+                        visibleColumns));
+                paintedHeaderVersion = headerVersion;
+            }
         }
+        paintedVisibleColumns = visibleColumns;
+
+        if (target.isFullRepaint() || headerVersion != paintedHeaderVersion) {
+            paintHeaderTree(target);
+        } else {
+            paintChangedHeaderCells(target);
+        }
+        changedHeaderCells.clear();
+        paintedReadOnly = isReadOnly();
+    }
+
+    private void paintHeaderTree(PaintTarget target) throws PaintException {
+        headerCellMap.removeAll();
+        paintedHeaderCells.clear();
+
+        target.startTag(TAG_COLUMNS);
+        target.addAttribute(ATTR_VERSION, headerVersion);
         int index = 0;
 
-        // Paint all scroll contents
+        // Paint all scroll contents. Header cells are painted in row-major
+        // order with precomputed spans.
         for (ScrollContent sc : scrollContents) {
+            HeaderLayout layout = new HeaderLayout(sc);
             target.startTag(TAG_SCROLLCONTENT);
-
-            // Paint scroll content's column groups
-            for (ColumnGroup cg : sc.getColumnGroups()) {
-                index = paintColumnGroup(target, cg, index);
+            target.addAttribute(ATTR_LEVELS, layout.getRowCount());
+            target.addAttribute(ATTR_COLS, layout.getColumnCount());
+
+            for (HeaderLayout.Cell cell : layout.getCells()) {
+                if (cell.isColumn()) {
+                    paintColumn(target, (Column) cell.getHeaderCell(), index
+                            + cell.getOffset(), cell);
+                } else {
+                    paintColumnGroup(target, cell);
+                }
             }
+            index += layout.getColumnCount();
             target.endTag(TAG_SCROLLCONTENT);
         }
         target.endTag(TAG_COLUMNS);
-        columnStructureChanged = false;
+        paintedHeaderVersion = headerVersion;
     }
 
-    private int paintColumnGroup(PaintTarget target, ColumnGroup cg, int index)
+    /*
+     * Add caption, readonly, width and expand ratio patches for the changed
+     * header cells to the UIDL. Cells that are not painted in the header are skipped.
+     */
+    private void paintChangedHeaderCells(PaintTarget target)
             throws PaintException {
-        target.startTag(TAG_COLUMNGROUP);
-        target.addAttribute(ATTR_CAPTION, defaultString(cg.getCaption()));
-
-        if (cg instanceof HierarchicalColumnGroup) {
-            // Paint column group's hierarchical structure
-            for (ColumnGroup subCg : ((HierarchicalColumnGroup) cg)
-                    .getSubColumnGroups()) {
-                index = paintColumnGroup(target, subCg, index);
+        if (paintedReadOnly != isReadOnly()) {
+            for (ScrollContent sc : scrollContents) {
+                changedHeaderCells.addAll(sc.getColumns());
             }
-        } else {
-            // Paint column group's columns
-            for (Column c : cg.getColumns()) {
-                paintColumn(target, c, index++);
+        }
+        boolean started = false;
+        for (Object cell : changedHeaderCells) {
+            if (!paintedHeaderCells.contains(cell)) {
+                continue;
+            }
+            if (!started) {
+                target.startTag(TAG_HEADER_CELLS);
+                started = true;
             }
+            target.startTag(TAG_HEADER_CELL);
+            target.addAttribute(ATTR_KEY, headerCellMap.key(cell));
+            if (cell instanceof Column) {
+                Column c = (Column) cell;
+                target.addAttribute(ATTR_CAPTION,
+                        defaultString(c.getCaption()));
+                target.addAttribute(ATTR_READONLY, c.isReadonly()
+                        || isReadOnly());
+                // Width of -1 and ratio of 0 clear the previous ones
+                target.addAttribute(ATTR_WIDTH, c.getWidth());
+                target.addAttribute(ATTR_EXPAND_RATIO, c.getExpandRatio());
+            } else {
+                target.addAttribute(ATTR_CAPTION,
+                        defaultString(((ColumnGroup) cell).getCaption()));
+            }
+            target.endTag(TAG_HEADER_CELL);
         }
-        target.endTag(TAG_COLUMNGROUP);
+        if (started) {
+            target.endTag(TAG_HEADER_CELLS);
+        }
+    }
 
-        return index;
+    /*
+     * Add the header cells to remove and insert to the UIDL. Only for the
+     * default scroll content, which has a single column group. New colspan of
+     * the group is painted as well.
+     */
+    private void paintColumnDiff(PaintTarget target, ColumnDiff diff)
+            throws PaintException {
+        target.startTag(TAG_COLUMN_DIFF);
+        target.addAttribute(ATTR_BASE_VERSION, paintedHeaderVersion);
+        target.addAttribute(ATTR_VERSION, headerVersion);
+        List<Integer> removed = diff.getRemovedIndexes();
+        target.addAttribute(ATTR_REMOVED_COLS, removed.toArray());
+        List<Column> columns = new ArrayList<Column>(
+                defaultColumnGroup.getColumns());
+        for (Integer index : diff.getInsertedIndexes()) {
+            paintColumn(target, columns.get(index), index, null);
+        }
+        target.startTag(TAG_COLUMNGROUP);
+        target.addAttribute(ATTR_KEY, getHeaderCellKey(defaultColumnGroup));
+        target.addAttribute(ATTR_COLSPAN, columns.size());
+        target.endTag(TAG_COLUMNGROUP);
+        target.endTag(TAG_COLUMN_DIFF);
     }
 
-    private void paintColumn(PaintTarget target, Column c, int index)
+    private void paintColumnGroup(PaintTarget target, HeaderLayout.Cell cell)
             throws PaintException {
+        ColumnGroup cg = (ColumnGroup) cell.getHeaderCell();
+        target.startTag(TAG_COLUMNGROUP);
+        target.addAttribute(ATTR_KEY, getHeaderCellKey(cg));
+        target.addAttribute(ATTR_CAPTION, defaultString(cg.getCaption()));
+        paintHeaderCellLayout(target, cell);
+        target.endTag(TAG_COLUMNGROUP);
+    }
+
+    /*
+     * Paints a column. Layout cell is null, when the column is painted as a
+     * part of a column diff.
+     */
+    private void paintColumn(PaintTarget target, Column c, int index,
+            HeaderLayout.Cell cell) throws PaintException {
         target.startTag(TAG_COLUMN);
         target.addAttribute(ATTR_PID, columnIdMap.key(c.getColumnId()));
+        target.addAttribute(ATTR_KEY, getHeaderCellKey(c));
         target.addAttribute(ATTR_INDEX, index);
         target.addAttribute(ATTR_CAPTION, defaultString(c.getCaption()));
         target.addAttribute(ATTR_READONLY, c.isReadonly() || isReadOnly());
+        if (c.getWidth() >= 0) {
+            target.addAttribute(ATTR_WIDTH, c.getWidth());
+        } else if (c.getExpandRatio() > 0) {
+            target.addAttribute(ATTR_EXPAND_RATIO, c.getExpandRatio());
+        }
+        String renderer = columnRenderers.get(c.getColumnId());
+        if (renderer != null) {
+            target.addAttribute(ATTR_RENDERER, renderer);
+        }
+        String pattern = getNumberPattern(
+                datasource.getType(c.getColumnId()), c.getColumnId());
+        if (pattern != null) {
+            PatternFormatter f = (PatternFormatter) formatter;
+            target.addAttribute(ATTR_NUMBER_PATTERN, pattern);
+            target.addAttribute(ATTR_DECIMAL_SEPARATOR,
+                    String.valueOf(f.getDecimalSeparator()));
+            target.addAttribute(ATTR_GROUPING_SEPARATOR,
+                    String.valueOf(f.getGroupingSeparator()));
+        }
+        if (cell != null) {
+            paintHeaderCellLayout(target, cell);
+        }
         // TODO
 
         target.endTag(TAG_COLUMN);
     }
 
+    private void paintHeaderCellLayout(PaintTarget target,
+            HeaderLayout.Cell cell) throws PaintException {
+        target.addAttribute(ATTR_ROW, cell.getRow());
+        target.addAttribute(ATTR_OFFSET, cell.getOffset());
+        if (cell.getColspan() > 1) {
+            target.addAttribute(ATTR_COLSPAN, cell.getColspan());
+        }
+        if (cell.getRowspan() > 1) {
+            target.addAttribute(ATTR_ROWSPAN, cell.getRowspan());
+        }
+    }
+
+    private String getHeaderCellKey(Object headerCell) {
+        paintedHeaderCells.add(headerCell);
+        return headerCellMap.key(headerCell);
+    }
+
     private void paintRows(PaintTarget target, Object[][] cells, int cols)
             throws PaintException {
         int index = 0;
@@ -579,22 +997,51 @@ public class CustomScrollTable extends AbstractComponent implements
             if (end > size) {
                 end = size;
             }
+            if (end > 0) {
+                // Position in the ordered rows for the client's row cache
+                target.addAttribute(ATTR_FIRST_POSITION, getContainerStrategy()
+                        .indexOfId(((Indexed) datasource)
+                                .getIdByIndex((Integer) cells[0][0])));
+            }
+            // After a resize only the rows that the client doesn't have yet
+            // are painted with the values.
+            boolean paintOnlyMissingRows = visibleRowCountChanged
+                    && !rowStructureChanged && !rowsChanged
+                    && paintedDataVersion == dataVersion
+                    && !target.isFullRepaint();
+            List<String> newDictionaryEntries = Collections.emptyList();
+            if (dictionaryEncoding) {
+                newDictionaryEntries = paintValueDictionary(target, cells,
+                        cols, end, paintOnlyMissingRows);
+            }
+            int valueCount = 0;
+            int encodedValueCount = 0;
+            int rawLength = 0;
+            int encodedLength = 0;
+            for (String entry : newDictionaryEntries) {
+                encodedLength += entry.length();
+            }
             String v;
+            Set<Object> itemIds = new HashSet<Object>();
             for (int i = 0; i < end; i++) {
                 index = (Integer) cells[0][i];
 
                 target.startTag(TAG_TR);
                 target.addAttribute(ATTR_INDEX, index);
                 Object itemId = ((Indexed) datasource).getIdByIndex(index);
+                target.addAttribute(ATTR_KEY, rowKeyMap.key(itemId));
+                boolean painted = paintedRowItemIds.contains(itemId);
+                itemIds.add(itemId);
+                if (paintOnlyMissingRows && painted) {
+                    target.addAttribute(ATTR_CACHED, true);
+                    target.endTag(TAG_TR);
+                    continue;
+                }
 
                 String rowHeader = getRowHeaderByIndex(index);
                 if (rowHeader != null) {
                     target.addAttribute(ATTR_CAPTION, rowHeader);
                 }
-                String rowDescription = getRowDescriptionByIndex(index);
-                if (rowDescription != null && rowDescription.length() > 0) {
-                    target.addAttribute(ATTR_DESCRIPTION, rowDescription);
-                }
 
                 target.addAttribute(ATTR_DEPTH, getContainerStrategy()
                         .getDepth(((Indexed) datasource).getIdByIndex(index)));
@@ -606,21 +1053,115 @@ public class CustomScrollTable extends AbstractComponent implements
                 }
 
                 for (int j = 1; j < (cols + 1); j++) {
-                    v = (String) cells[j][i];
-                    if (v == null) {
-                        v = "";
-                    }
+                    v = (cells[j][i] != null) ? cells[j][i].toString() : "";
+                    Integer dictionaryIndex = dictionaryEncoding
+                            ? valueDictionary.get(v) : null;
                     target.startTag(TAG_VALUE);
-                    target.addText(v);
+                    if (cells[j][i] instanceof TruncatedText) {
+                        target.addAttribute(ATTR_TRUNCATED, true);
+                    }
+                    if (dictionaryIndex != null) {
+                        target.addAttribute(ATTR_DICTIONARY_INDEX,
+                                dictionaryIndex.intValue());
+                        encodedLength += String.valueOf(dictionaryIndex)
+                                .length();
+                        encodedValueCount++;
+                    } else {
+                        target.addText(v);
+                        encodedLength += v.length();
+                    }
                     target.endTag(TAG_VALUE);
+                    rawLength += v.length();
+                    valueCount++;
                 }
 
                 target.endTag(TAG_TR);
             }
             target.endTag(TAG_ROWS);
+
+            if (paintedDataVersion != dataVersion) {
+                // Client drops the cached rows of the old version
+                for (Object itemId : keyedRowItemIds) {
+                    if (!itemIds.contains(itemId)) {
+                        rowKeyMap.remove(itemId);
+                    }
+                }
+                keyedRowItemIds = new HashSet<Object>(itemIds);
+            } else {
+                keyedRowItemIds.addAll(itemIds);
+            }
+            paintedRowItemIds = itemIds;
+            paintedDataVersion = dataVersion;
+            paintMetrics = new PaintMetrics(valueCount, encodedValueCount,
+                    rawLength, encodedLength, valueDictionary.size());
         }
         rowStructureChanged = false;
         rowsChanged = false;
+        visibleRowCountChanged = false;
+    }
+
+    /*
+     * Paints the new entries of the value dictionary and the offset the client
+     * puts them to. The dictionary is started again on a full repaint, and
+     * when it is full and the client doesn't need its cached rows.
+     */
+    private List<String> paintValueDictionary(PaintTarget target,
+            Object[][] cells, int cols, int end, boolean paintOnlyMissingRows)
+            throws PaintException {
+        if (target.isFullRepaint()
+                || (!paintOnlyMissingRows
+                        && valueDictionary.size() >= MAX_DICTIONARY_SIZE)) {
+            valueDictionary.clear();
+            valueDictionaryReset = true;
+        }
+        List<String> newEntries = updateValueDictionary(cells, cols, end,
+                paintOnlyMissingRows);
+        if (valueDictionaryReset || !newEntries.isEmpty()) {
+            target.addAttribute(ATTR_DICTIONARY_OFFSET, valueDictionary.size()
+                    - newEntries.size());
+        }
+        if (!newEntries.isEmpty()) {
+            target.addAttribute(ATTR_DICTIONARY,
+                    newEntries.toArray(new String[newEntries.size()]));
+        }
+        valueDictionaryReset = false;
+        return newEntries;
+    }
+
+    /*
+     * Adds the cell values that are worth encoding to the value dictionary and
+     * returns the new entries. A value is encoded when it repeats in the
+     * painted cells, so unique values, like ids, don't grow the dictionary.
+     */
+    private List<String> updateValueDictionary(Object[][] cells, int cols,
+            int end, boolean skipPaintedRows) {
+        Map<String, Integer> counts = new LinkedHashMap<String, Integer>();
+        for (int i = 0; i < end; i++) {
+            if (skipPaintedRows
+                    && paintedRowItemIds.contains(((Indexed) datasource)
+                            .getIdByIndex((Integer) cells[0][i]))) {
+                continue;
+            }
+            for (int j = 1; j < (cols + 1); j++) {
+                String v = (cells[j][i] != null) ? cells[j][i].toString()
+                        : null;
+                if (v == null || v.length() < MIN_DICTIONARY_VALUE_LENGTH
+                        || valueDictionary.containsKey(v)) {
+                    continue;
+                }
+                Integer count = counts.get(v);
+                counts.put(v, (count == null) ? 1 : count + 1);
+            }
+        }
+        List<String> newEntries = new ArrayList<String>();
+        for (Map.Entry<String, Integer> e : counts.entrySet()) {
+            if (e.getValue() > 1
+                    && valueDictionary.size() < MAX_DICTIONARY_SIZE) {
+                valueDictionary.put(e.getKey(), valueDictionary.size());
+                newEntries.add(e.getKey());
+            }
+        }
+        return newEntries;
     }
 
     private void paintFloatingRows(PaintTarget target) {
@@ -663,11 +1204,38 @@ public class CustomScrollTable extends AbstractComponent implements
         }
     }
 
+    /*
+     * Returns false for a request that is older than the last handled one.
+     * Rows are computed lazily on the paint, so only the last of the requests
+     * in the same batch causes a page to be computed.
+     */
+    private boolean acceptRowRequest(Integer sequence) {
+        if (sequence == null) {
+            return true;
+        }
+        if (sequence.intValue() <= rowRequestSequence) {
+            return false;
+        }
+        rowRequestSequence = sequence.intValue();
+        return true;
+    }
+
     /* Handle change of first visible row and/or visible row count. */
     private void handleRowVisibilityChange(Integer newFirstRowIndex,
             Integer newVisibleRows) {
+        if (updateRowVisibility(newFirstRowIndex, newVisibleRows)) {
+            requestRowsToPaint();
+        }
+    }
+
+    /*
+     * Update the first visible row and/or visible row count. Returns true when
+     * the painted rows change.
+     */
+    private boolean updateRowVisibility(Integer newFirstRowIndex,
+            Integer newVisibleRows) {
         if (newFirstRowIndex == null && newVisibleRows == null) {
-            return;
+            return false;
         }
 
         boolean doRefresh = false;
@@ -696,13 +1264,14 @@ public class CustomScrollTable extends AbstractComponent implements
         }
 
         if (newVisibleRows != null) {
-            requestedRowsToPaint = newVisibleRows.intValue();
-            rowStructureChanged = true;
+            // Existing rows are kept on the client. Same count again means
+            // that the client is missing rows, so all of them are painted.
+            int rows = newVisibleRows.intValue();
+            visibleRowCountChanged = (rows != requestedRowsToPaint);
+            requestedRowsToPaint = rows;
             doRefresh = true;
         }
-        if (doRefresh) {
-            requestRefreshDataToPaint();
-        }
+        return doRefresh;
     }
 
     private void toggleChildVisibility(Object itemId) {
@@ -788,6 +1357,9 @@ public class CustomScrollTable extends AbstractComponent implements
         valueChangeItemId = itemId;
 
         p.setValue(newVal);
+        // Edited row is painted again, other cached rows stay valid
+        rowsChanged = true;
+        requestRowsToPaint();
     }
 
     /**
@@ -797,6 +1369,7 @@ public class CustomScrollTable extends AbstractComponent implements
      */
     public void expandNode(Object itemId) {
         getContainerStrategy().expandNode(itemId);
+        dataVersion++;
         markAsDirty();
     }
 
@@ -807,6 +1380,7 @@ public class CustomScrollTable extends AbstractComponent implements
      */
     public void collapseNode(Object itemId) {
         getContainerStrategy().collapseNode(itemId);
+        dataVersion++;
         markAsDirty();
     }
 
@@ -827,7 +1401,7 @@ public class CustomScrollTable extends AbstractComponent implements
      */
     public void setRowHeaderPropertyId(Object rowHeaderPropertyId) {
         this.rowHeaderPropertyId = rowHeaderPropertyId;
-        setVisibleColumns(visibleColumns.toArray());
+        requestRefreshDataToPaint();
     }
 
     /**
@@ -840,14 +1414,254 @@ public class CustomScrollTable extends AbstractComponent implements
     }
 
     /**
-     * Set the row description property id.
+     * Set the row description property id. Description of a row is fetched
+     * and shown as a tooltip when the pointer lingers on the row.
      * 
      * @param rowDescriptionPropertyId
      *            Row description property id
      */
     public void setRowDescriptionPropertyId(Object rowDescriptionPropertyId) {
         this.rowDescriptionPropertyId = rowDescriptionPropertyId;
-        setVisibleColumns(visibleColumns.toArray());
+        getState().rowDescriptions = (rowDescriptionPropertyId != null);
+        requestRefreshDataToPaint();
+    }
+
+    /**
+     * Returns true when rows are rendered as HTML strings on the client.
+     * 
+     * @return
+     */
+    public boolean isLightweightRows() {
+        return getState().lightweightRows;
+    }
+
+    /**
+     * Set true to render rows as HTML strings on the client instead of a
+     * widget for each cell. Lightweight rows are faster to render for large
+     * viewports. Default is false.
+     * 
+     * @param lightweightRows
+     */
+    public void setLightweightRows(boolean lightweightRows) {
+        getState().lightweightRows = lightweightRows;
+    }
+
+    public boolean isDictionaryEncoding() {
+        return dictionaryEncoding;
+    }
+
+    /**
+     * Set true to send the repeated cell values once in a string table and
+     * refer to them by the index in the later cells. The client keeps the
+     * table across responses, so values of categorical columns, like a
+     * currency or a status, cost only a few bytes. Default is false.
+     * 
+     * @param dictionaryEncoding
+     */
+    public void setDictionaryEncoding(boolean dictionaryEncoding) {
+        if (this.dictionaryEncoding != dictionaryEncoding) {
+            this.dictionaryEncoding = dictionaryEncoding;
+            valueDictionary.clear();
+            valueDictionaryReset = true;
+            requestRefreshDataToPaint();
+        }
+    }
+
+    /**
+     * Returns metrics of the last paint of the rows, like the compression
+     * ratio of the dictionary encoding, or null when no rows are painted yet.
+     * 
+     * @return
+     */
+    public PaintMetrics getPaintMetrics() {
+        return paintMetrics;
+    }
+
+    public boolean isClientSideNumberFormatting() {
+        return clientSideNumberFormatting;
+    }
+
+    /**
+     * Set true to send numbers raw and format them on the client. Applies to
+     * the columns of Byte, Short, Integer, Float and Double type when the
+     * formatter is a {@link PatternFormatter} with a pattern for the column,
+     * like the {@link #DEFAULT_FORMATTER}. Numbers of the other columns are
+     * formatted on the server as before. Default is false.
+     * 
+     * @param clientSideNumberFormatting
+     */
+    public void setClientSideNumberFormatting(
+            boolean clientSideNumberFormatting) {
+        if (this.clientSideNumberFormatting != clientSideNumberFormatting) {
+            this.clientSideNumberFormatting = clientSideNumberFormatting;
+            headerVersion++;
+            requestRefreshDataToPaint();
+        }
+    }
+
+    /**
+     * Returns the maximum length of the texts sent for the column, or -1 when
+     * the texts are sent whole.
+     * 
+     * @param propertyId
+     * @return
+     */
+    public int getColumnMaxTextLength(Object propertyId) {
+        Integer maxLength = columnMaxTextLengths.get(propertyId);
+        return (maxLength != null) ? maxLength : -1;
+    }
+
+    /**
+     * Set the maximum length of the texts sent for the column. Longer texts
+     * are cut to the length and end with the {@link #TRUNCATION_INDICATOR},
+     * so the payload and the width measuring on the client don't depend on
+     * the size of long texts, like notes. Client fetches the full value when
+     * a truncated cell is edited, or double clicked when the column is read
+     * only. Doesn't apply to the columns with a cell renderer or a client
+     * side number pattern. Use -1 to send the texts whole, which is the
+     * default.
+     * 
+     * @param propertyId
+     * @param maxLength
+     *            Maximum count of characters before the indicator, or -1
+     */
+    public void setColumnMaxTextLength(Object propertyId, int maxLength) {
+        Integer old = (maxLength >= 0) ? columnMaxTextLengths.put(propertyId,
+                maxLength) : columnMaxTextLengths.remove(propertyId);
+        if (old == null ? maxLength >= 0 : old.intValue() != maxLength) {
+            requestRefreshDataToPaint();
+        }
+    }
+
+    /**
+     * Returns name of the client side cell renderer of the column, or null
+     * when values of the column are shown as text.
+     * 
+     * @param propertyId
+     * @return
+     */
+    public String getColumnRenderer(Object propertyId) {
+        return columnRenderers.get(propertyId);
+    }
+
+    /**
+     * Set a client side cell renderer for the column by the name it is
+     * registered with to the CellRendererRegistry, f.ex.
+     * {@link CellRendererRegistry#BOOLEAN} or
+     * {@link CellRendererRegistry#PROGRESS}. Values of the column are sent as
+     * compact raw values, like "true" or "0.5", and rendered directly to the
+     * DOM on the client. Columns with a renderer are read only. Null removes
+     * the renderer.
+     * 
+     * @param propertyId
+     * @param rendererName
+     */
+    public void setColumnRenderer(Object propertyId, String rendererName) {
+        String old = (rendererName != null) ? columnRenderers.put(propertyId,
+                rendererName) : columnRenderers.remove(propertyId);
+        if (rendererName == null ? old != null : !rendererName.equals(old)) {
+            headerVersion++;
+            requestRefreshDataToPaint();
+        }
+    }
+
+    /**
+     * Returns the row height in pixels that is used for estimating the count
+     * of the visible rows on the first paint.
+     * 
+     * @return
+     */
+    public int getEstimatedRowHeight() {
+        if (estimatedRowHeight > 0) {
+            return estimatedRowHeight;
+        }
+        if (getSession() != null) {
+            Object measured = getSession().getAttribute(
+                    MEASURED_ROW_HEIGHT_ATTRIBUTE);
+            if (measured instanceof Integer) {
+                return (Integer) measured;
+            }
+        }
+        return DEFAULT_ESTIMATED_ROW_HEIGHT;
+    }
+
+    /**
+     * Set the row height in pixels that is used for estimating the count of
+     * the visible rows on the first paint, so the first response can already
+     * contain the rows. Client corrects the count only when the estimate was
+     * wrong. When not set, the row height last measured in the same session is
+     * used, or {@link #DEFAULT_ESTIMATED_ROW_HEIGHT}.
+     * 
+     * @param estimatedRowHeight
+     *            Positive height in pixels
+     * @throws IllegalArgumentException
+     *             when the height is not positive
+     */
+    public void setEstimatedRowHeight(int estimatedRowHeight) {
+        if (estimatedRowHeight <= 0) {
+            throw new IllegalArgumentException(
+                    "Estimated row height must be positive");
+        }
+        this.estimatedRowHeight = estimatedRowHeight;
+    }
+
+    /**
+     * Returns the maximum count of row requests that the client sends per
+     * second while scrolling.
+     * 
+     * @return
+     */
+    public int getMaxScrollRequestsPerSecond() {
+        return getState().maxScrollRequestsPerSecond;
+    }
+
+    /**
+     * Set the maximum count of row requests that the client sends per second
+     * while scrolling. Requests are sent during the scrolling at most this
+     * often, not only after the scrolling stops. Default is 10.
+     * 
+     * @param maxScrollRequestsPerSecond
+     *            Positive count of requests
+     * @throws IllegalArgumentException
+     *             when the count is not positive
+     */
+    public void setMaxScrollRequestsPerSecond(int maxScrollRequestsPerSecond) {
+        if (maxScrollRequestsPerSecond <= 0) {
+            throw new IllegalArgumentException(
+                    "Scroll requests per second must be positive");
+        }
+        getState().maxScrollRequestsPerSecond = maxScrollRequestsPerSecond;
+    }
+
+    /**
+     * Returns the column width model: widths in pixels by the property id.
+     * Model holds the widths measured by the client and the widths set by
+     * {@link #setColumnWidths(Map)}. Returned map can be persisted, f.ex. per
+     * user, and restored later.
+     * 
+     * @return Unmodifiable copy of the model
+     */
+    public Map<Object, Integer> getColumnWidths() {
+        return Collections.unmodifiableMap(new HashMap<Object, Integer>(
+                columnWidths));
+    }
+
+    /**
+     * Set the column width model: widths in pixels by the property id. When
+     * the model has a width for every column of a scroll content, the client
+     * renders the content with these widths without measuring it first. Model
+     * is not used for a scroll content where every column has a fixed width
+     * or an expand ratio.
+     * 
+     * @param columnWidths
+     *            Widths by the property id, or null to clear the model
+     */
+    public void setColumnWidths(Map<?, Integer> columnWidths) {
+        this.columnWidths.clear();
+        if (columnWidths != null) {
+            this.columnWidths.putAll(columnWidths);
+        }
+        updateColumnWidthState();
     }
 
     /**
@@ -908,10 +1722,13 @@ public class CustomScrollTable extends AbstractComponent implements
         }
 
         // Checks that the new visible columns contains no nulls and properties
-        // exist
+        // exist. Container's property id collection is not necessarily a Set,
+        // so use a hash set for the lookups.
         final Collection<?> properties = datasource.getContainerPropertyIds();
+        final Set<?> propertySet = (properties instanceof Set) ? (Set<?>) properties
+                : new HashSet<Object>(properties);
         for (Object propertyCandidate : newVisibleColumns) {
-            if (!properties.contains(propertyCandidate)) {
+            if (!propertySet.contains(propertyCandidate)) {
                 throw new IllegalArgumentException(
                         "Property ids must exist in the Container, missing id: "
                                 + propertyCandidate);
@@ -919,13 +1736,63 @@ public class CustomScrollTable extends AbstractComponent implements
         }
 
         // Check for column changes
-        if (visibleColumns == null
-                || newVisibleColumns.size() != visibleColumns.size()
-                || !newVisibleColumns.containsAll(visibleColumns)) {
+        List<Object> newColumns = new ArrayList<Object>(newVisibleColumns);
+        ColumnDiff diff = new ColumnDiff(visibleColumns, newColumns);
+        visibleColumns = Collections.unmodifiableList(newColumns);
+        if (diff.isEmpty()) {
+            return;
+        }
+
+        if (isDefaultScrollContentInUse()) {
+            syncDefaultScrollContent();
+        }
+        // Cells of the rows need to be re-created on the client side.
+        rowsChanged = true;
+        if (pageBuffer != null && !pageBufferColumns.isEmpty()) {
+            updatePageBufferColumns();
+            dataVersion++;
+            markAsDirty();
+        } else {
             requestRefreshDataToPaint();
         }
+    }
 
-        visibleColumns = Collections.unmodifiableCollection(newVisibleColumns);
+    /*
+     * Re-orders the value arrays of the pageBuffer to match the visible
+     * columns. Values are fetched from the container only for the columns
+     * that don't exist in the pageBuffer yet.
+     */
+    private void updatePageBufferColumns() {
+        Map<Object, Integer> oldIndexes = new HashMap<Object, Integer>();
+        int index = 1;
+        for (Object propertyId : pageBufferColumns) {
+            oldIndexes.put(propertyId, index++);
+        }
+
+        final Object[] rowIndexes = pageBuffer[0];
+        Object[][] cells = new Object[visibleColumns.size() + 1][];
+        cells[0] = rowIndexes;
+        index = 1;
+        for (Object propertyId : visibleColumns) {
+            Integer oldIndex = oldIndexes.get(propertyId);
+            if (oldIndex != null) {
+                cells[index++] = pageBuffer[oldIndex];
+                continue;
+            }
+            Object[] values = new Object[rowIndexes.length];
+            for (int i = 0; i < rowIndexes.length; i++) {
+                if (rowIndexes[i] == null) {
+                    continue;
+                }
+                Object id = ((Indexed) datasource)
+                        .getIdByIndex((Integer) rowIndexes[i]);
+                Property p = datasource.getContainerProperty(id, propertyId);
+                values[i] = getPropertyValue(id, p, propertyId);
+            }
+            cells[index++] = values;
+        }
+        pageBuffer = cells;
+        pageBufferColumns = visibleColumns;
     }
 
     /**
@@ -997,9 +1864,16 @@ public class CustomScrollTable extends AbstractComponent implements
     }
 
     /**
-     * Request data to be painted to be refreshed on next paint call.
+     * Request data to be painted to be refreshed on next paint call. Rows
+     * cached on the client side are invalidated too.
      */
     public void requestRefreshDataToPaint() {
+        dataVersion++;
+        requestRowsToPaint();
+    }
+
+    /* Request rows to be painted again without changes in the data. */
+    private void requestRowsToPaint() {
         pageBuffer = null;
         markAsDirty();
     }
@@ -1007,6 +1881,7 @@ public class CustomScrollTable extends AbstractComponent implements
     private void refreshRenderedCells() {
         final Object[] colids = getVisibleColumns();
         final int cols = colids.length;
+        pageBufferColumns = visibleColumns;
         if (requestedFirstRowToPaint < 0) {
             resetRequestedFirstRowToPaint();
         }
@@ -1095,12 +1970,15 @@ public class CustomScrollTable extends AbstractComponent implements
         return item.getItemProperty(rowHeaderPropertyId).toString();
     }
 
-    private String getRowDescriptionByIndex(int i) {
+    /*
+     * Descriptions are not painted with the rows. Client requests them one by
+     * one when the pointer lingers on a row.
+     */
+    private String getRowDescription(Object itemId) {
         if (rowDescriptionPropertyId == null) {
             return null;
         }
-        Object id = ((Indexed) datasource).getIdByIndex(i);
-        Item item = datasource.getItem(id);
+        Item item = datasource.getItem(itemId);
         if (item == null) {
             return null;
         }
@@ -1122,7 +2000,55 @@ public class CustomScrollTable extends AbstractComponent implements
 
     protected Object getPropertyValue(Object rowId, Property property,
             Object propertyId) {
-        return formatPropertyValue(rowId, property, propertyId);
+        String value = formatPropertyValue(rowId, property, propertyId);
+        int maxLength = getMaxTextLength(propertyId);
+        if (value == null || maxLength < 0 || value.length() <= maxLength) {
+            return value;
+        }
+        // Don't split a surrogate pair
+        int end = maxLength;
+        if (end > 0 && Character.isHighSurrogate(value.charAt(end - 1))) {
+            end--;
+        }
+        return new TruncatedText(value.substring(0, end)
+                + TRUNCATION_INDICATOR);
+    }
+
+    /*
+     * Cell text that was cut by the column's maximum text length. Kept in the
+     * page buffer, so the cell is painted as truncated whatever the length of
+     * the cut text is.
+     */
+    private static class TruncatedText implements Serializable {
+
+        private static final long serialVersionUID = 3870412697525189043L;
+
+        private final String text;
+
+        private TruncatedText(String text) {
+            this.text = text;
+        }
+
+        @Override
+        public String toString() {
+            return text;
+        }
+    }
+
+    /*
+     * Returns the maximum text length of the column, or -1 when the values are
+     * sent whole. Raw values for the renderers and the number patterns are
+     * never truncated.
+     */
+    private int getMaxTextLength(Object propertyId) {
+        Integer maxLength = columnMaxTextLengths.get(propertyId);
+        if (maxLength == null
+                || columnRenderers.containsKey(propertyId)
+                || getNumberPattern(datasource.getType(propertyId),
+                        propertyId) != null) {
+            return -1;
+        }
+        return maxLength;
     }
 
     protected String formatPropertyValue(Object rowId, Property property,
@@ -1131,8 +2057,20 @@ public class CustomScrollTable extends AbstractComponent implements
             return "";
         }
 
+        if (columnRenderers.containsKey(propertyId)) {
+            // Client renders the raw value with the column's renderer
+            Object value = property.getValue();
+            if (value instanceof Number) {
+                return toRawNumber((Number) value);
+            }
+            return String.valueOf(value);
+        }
         if (property.getType() != null
                 && Number.class.isAssignableFrom(property.getType())) {
+            if (getNumberPattern(property.getType(), propertyId) != null) {
+                // Client formats the number by the column's pattern
+                return toRawNumber((Number) property.getValue());
+            }
             try {
                 return formatter.format(property.getValue(), propertyId);
             } catch (Exception e) {
@@ -1142,6 +2080,31 @@ public class CustomScrollTable extends AbstractComponent implements
         return property.toString();
     }
 
+    /*
+     * Returns the pattern for formatting the numbers of the column on the
+     * client, or null when they are formatted on the server.
+     */
+    private String getNumberPattern(Class<?> type, Object propertyId) {
+        if (!clientSideNumberFormatting
+                || !(formatter instanceof PatternFormatter)
+                || columnRenderers.containsKey(propertyId)) {
+            return null;
+        }
+        if (type != Byte.class && type != Short.class && type != Integer.class
+                && type != Float.class && type != Double.class) {
+            // Long and big numbers may not fit in a double on the client
+            return null;
+        }
+        return ((PatternFormatter) formatter).getPattern(propertyId);
+    }
+
+    private static String toRawNumber(Number number) {
+        if (number instanceof Float || number instanceof Double) {
+            return String.valueOf(number.doubleValue());
+        }
+        return String.valueOf(number.longValue());
+    }
+
     /*
      * Fixes requestedFirstRowToPaint datasource item index. If index doesn't
      * exist (overflows), index will be set to the index of the first item in
@@ -1199,11 +2162,51 @@ public class CustomScrollTable extends AbstractComponent implements
     }
 
     /**
-     * Catch a value change and calculate a new total sum for the target column.
+     * Catch a value change and repaint the rows when the client has the
+     * changed value. Cached rows of the client are invalidated only when the
+     * value may be in a cached row that is not painted again.
      */
     @Override
     public void valueChange(ValueChangeEvent event) {
-        // TODO
+        Object[] owner = findPropertyOwner(event.getProperty(),
+                keyedRowItemIds);
+        if (owner == null) {
+            // Client doesn't have the value
+            return;
+        }
+        if (paintedRowItemIds.contains(owner[0])
+                && !owner[1].equals(rowDescriptionPropertyId)) {
+            // Painted rows replace the cached rows of the same positions
+            rowsChanged = true;
+            requestRowsToPaint();
+        } else {
+            // Old value may be in a cached row or a cached description
+            requestRefreshDataToPaint();
+        }
+    }
+
+    /*
+     * Returns the item id and the property id of the property among the
+     * painted properties of the given items, or null when it's not found.
+     * Keyed items include the painted ones.
+     */
+    private Object[] findPropertyOwner(Property<?> property,
+            Set<Object> itemIds) {
+        Object[] colids = getVisibleColumns();
+        List<Object> propertyIds = new ArrayList<Object>(colids.length + 2);
+        Collections.addAll(propertyIds, colids);
+        propertyIds.add(rowHeaderPropertyId);
+        propertyIds.add(rowDescriptionPropertyId);
+        for (Object itemId : itemIds) {
+            for (Object propertyId : propertyIds) {
+                if (propertyId != null
+                        && property.equals(datasource.getContainerProperty(
+                                itemId, propertyId))) {
+                    return new Object[] { itemId, propertyId };
+                }
+            }
+        }
+        return null;
     }
 
     @Override
@@ -1223,7 +2226,13 @@ public class CustomScrollTable extends AbstractComponent implements
 
     @Override
     public void scrollContentChanged() {
-        columnStructureChanged = true;
+        headerVersion++;
         requestRefreshDataToPaint();
     }
+
+    @Override
+    public void headerCellChanged(Object headerCell) {
+        changedHeaderCells.add(headerCell);
+        markAsDirty();
+    }
 }
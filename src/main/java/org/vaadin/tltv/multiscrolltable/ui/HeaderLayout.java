@@ -0,0 +1,177 @@
+/*
+ * Copyright 2013 Tomi Virtanen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.vaadin.tltv.multiscrolltable.ui;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * <b>HeaderLayout</b> is a grid layout of one ScrollContent's header. Every
+ * ColumnGroup and Column has a row, a column span, a row span and an offset of
+ * its first leaf column. Columns are always in the last row. A ColumnGroup
+ * without sub groups spans down to the row above the columns. Groups without
+ * any columns take no space and are left out.
+ */
+class HeaderLayout implements Serializable {
+
+    private static final long serialVersionUID = 2937184670128465017L;
+
+    /**
+     * A single header cell in the layout.
+     */
+    static class Cell implements Serializable {
+
+        private static final long serialVersionUID = -6127381539712850642L;
+
+        private final Object headerCell;
+        private final int row;
+        private final int offset;
+        private int colspan;
+        private int rowspan = 1;
+
+        private Cell(Object headerCell, int row, int offset) {
+            this.headerCell = headerCell;
+            this.row = row;
+            this.offset = offset;
+        }
+
+        /**
+         * Returns the Column or the ColumnGroup of this cell.
+         * 
+         * @return
+         */
+        public Object getHeaderCell() {
+            return headerCell;
+        }
+
+        public boolean isColumn() {
+            return headerCell instanceof Column;
+        }
+
+        public int getRow() {
+            return row;
+        }
+
+        /**
+         * Returns index of the first leaf column under this cell, in the
+         * scroll content.
+         * 
+         * @return
+         */
+        public int getOffset() {
+            return offset;
+        }
+
+        public int getColspan() {
+            return colspan;
+        }
+
+        public int getRowspan() {
+            return rowspan;
+        }
+    }
+
+    private final List<List<Cell>> rows = new ArrayList<List<Cell>>();
+
+    private final int groupRows;
+
+    private int columnCount = 0;
+
+    public HeaderLayout(ScrollContent scrollContent) {
+        int depth = 0;
+        for (ColumnGroup cg : scrollContent.getColumnGroups()) {
+            depth = Math.max(depth, getDepth(cg));
+        }
+        groupRows = depth;
+        for (int i = 0; i <= groupRows; i++) {
+            rows.add(new ArrayList<Cell>());
+        }
+        for (ColumnGroup cg : scrollContent.getColumnGroups()) {
+            addGroup(cg, 0);
+        }
+    }
+
+    private static int getDepth(ColumnGroup cg) {
+        if (!(cg instanceof HierarchicalColumnGroup)) {
+            return 1;
+        }
+        int depth = 0;
+        for (ColumnGroup subCg : ((HierarchicalColumnGroup) cg)
+                .getSubColumnGroups()) {
+            depth = Math.max(depth, getDepth(subCg));
+        }
+        return depth + 1;
+    }
+
+    /*
+     * Adds the group and everything under it to the rows. Cells are added from
+     * left to right, so every row stays in order.
+     */
+    private void addGroup(ColumnGroup cg, int row) {
+        Cell cell = new Cell(cg, row, columnCount);
+        if (cg instanceof HierarchicalColumnGroup) {
+            for (ColumnGroup subCg : ((HierarchicalColumnGroup) cg)
+                    .getSubColumnGroups()) {
+                addGroup(subCg, row + 1);
+            }
+        } else {
+            cell.rowspan = groupRows - row;
+            for (Column c : cg.getColumns()) {
+                Cell columnCell = new Cell(c, groupRows, columnCount++);
+                columnCell.colspan = 1;
+                rows.get(groupRows).add(columnCell);
+            }
+        }
+        cell.colspan = columnCount - cell.offset;
+        if (cell.colspan > 0) {
+            rows.get(row).add(cell);
+        }
+    }
+
+    /**
+     * Returns all cells in row-major order.
+     * 
+     * @return
+     */
+    public List<Cell> getCells() {
+        List<Cell> cells = new ArrayList<Cell>();
+        for (List<Cell> row : rows) {
+            cells.addAll(row);
+        }
+        return Collections.unmodifiableList(cells);
+    }
+
+    /**
+     * Returns count of the rows, including the row of the columns.
+     * 
+     * @return
+     */
+    public int getRowCount() {
+        return rows.size();
+    }
+
+    /**
+     * Returns count of the leaf columns.
+     * 
+     * @return
+     */
+    public int getColumnCount() {
+        return columnCount;
+    }
+}
@@ -23,37 +23,15 @@ import java.util.Set;
 
 public class HierarchicalColumnGroup extends ColumnGroup {
 
-    private ColumnGroup parent;
-
     private final Set<ColumnGroup> subColumnGroups = new LinkedHashSet<ColumnGroup>();
 
-    /**
-     * Get parent column group.
-     * 
-     * @return
-     */
-    public ColumnGroup getParent() {
-        return parent;
-    }
-
-    /**
-     * Set a new parent column group.
-     * 
-     * @param parent
-     */
-    public void setParent(ColumnGroup parent) {
-        this.parent = parent;
-    }
-
     /**
      * Add a new child column group.
      * 
      * @param columngroup
      */
     public void addColumnGroup(ColumnGroup columngroup) {
-        if (columngroup instanceof HierarchicalColumnGroup) {
-            ((HierarchicalColumnGroup) columngroup).setParent(this);
-        }
+        columngroup.setParent(this);
         boolean added = subColumnGroups.add(columngroup);
         if (added) {
             fireScrollContentChange();
@@ -67,9 +45,7 @@ public class HierarchicalColumnGroup extends ColumnGroup {
      * @return
      */
     public boolean removeColumnGroup(ColumnGroup columngroup) {
-        if (columngroup instanceof HierarchicalColumnGroup) {
-            ((HierarchicalColumnGroup) columngroup).setParent(null);
-        }
+        columngroup.setParent(null);
         boolean removed = subColumnGroups.remove(columngroup);
         if (removed) {
             fireScrollContentChange();
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2013 Tomi Virtanen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.vaadin.tltv.multiscrolltable.ui;
+
+import java.io.Serializable;
+
+/**
+ * <b>PaintMetrics</b> describes the cell values of one paint of the rows. Sizes
+ * are counted in characters of the values; markup around them is left out.
+ * With the dictionary encoding enabled, the encoded size counts the sent
+ * texts, the dictionary indexes and the new dictionary entries.
+ */
+public class PaintMetrics implements Serializable {
+
+    private static final long serialVersionUID = 5190384721036643517L;
+
+    private final int valueCount;
+    private final int encodedValueCount;
+    private final int rawLength;
+    private final int encodedLength;
+    private final int dictionarySize;
+
+    PaintMetrics(int valueCount, int encodedValueCount, int rawLength,
+            int encodedLength, int dictionarySize) {
+        this.valueCount = valueCount;
+        this.encodedValueCount = encodedValueCount;
+        this.rawLength = rawLength;
+        this.encodedLength = encodedLength;
+        this.dictionarySize = dictionarySize;
+    }
+
+    /**
+     * Returns count of the painted cell values.
+     * 
+     * @return
+     */
+    public int getValueCount() {
+        return valueCount;
+    }
+
+    /**
+     * Returns count of the cell values that were sent as a dictionary index.
+     * 
+     * @return
+     */
+    public int getEncodedValueCount() {
+        return encodedValueCount;
+    }
+
+    /**
+     * Returns size of the cell values as plain texts.
+     * 
+     * @return
+     */
+    public int getRawLength() {
+        return rawLength;
+    }
+
+    /**
+     * Returns size of the cell values as they were sent.
+     * 
+     * @return
+     */
+    public int getEncodedLength() {
+        return encodedLength;
+    }
+
+    /**
+     * Returns count of the dictionary entries the client has after the paint.
+     * 
+     * @return
+     */
+    public int getDictionarySize() {
+        return dictionarySize;
+    }
+
+    /**
+     * Returns the raw size divided by the encoded size, 1 when nothing was
+     * painted.
+     * 
+     * @return
+     */
+    public double getCompressionRatio() {
+        if (encodedLength == 0) {
+            return 1;
+        }
+        return (double) rawLength / encodedLength;
+    }
+
+    @Override
+    public String toString() {
+        return "PaintMetrics[values=" + valueCount + ", encoded="
+                + encodedValueCount + ", raw=" + rawLength + ", sent="
+                + encodedLength + ", ratio=" + getCompressionRatio() + "]";
+    }
+}
@@ -3,4 +3,15 @@ package org.vaadin.tltv.multiscrolltable.ui;
 public interface ScrollContentChangeListener {
 
     void scrollContentChanged();
+
+    /**
+     * Called when a caption or an other property of a single Column or
+     * ColumnGroup has changed without a change in the header structure. Width
+     * and expand ratio of a Column are sent the same way, so the rows don't
+     * need to be painted again.
+     * 
+     * @param headerCell
+     *            Changed Column or ColumnGroup
+     */
+    void headerCellChanged(Object headerCell);
 }
@@ -0,0 +1,202 @@
+/*
+ * Copyright 2013 Tomi Virtanen
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.vaadin.tltv.multiscrolltable.client.ui;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.gwt.dom.client.Element;
+import com.google.gwt.junit.client.GWTTestCase;
+import com.google.gwt.user.client.ui.RootPanel;
+import com.vaadin.client.UIDL;
+
+/**
+ * Renders the same rows with DefaultRowContainer and HtmlRowContainer through
+ * a ContentPanel and checks that both show the same values. GwtTest prefix
+ * keeps the test out of the surefire run, it's run in a browser with the GWT
+ * JUnit runner.
+ */
+public class GwtTestRowContainers extends GWTTestCase {
+
+    private static final int ROWS = 20;
+    private static final int COLUMNS = 5;
+
+    @Override
+    public String getModuleName() {
+        return "org.vaadin.tltv.multiscrolltable.WidgetSet";
+    }
+
+    public void testRenderRows() {
+        assertRendered(new DefaultRowContainer());
+        assertRendered(new HtmlRowContainer(null));
+    }
+
+    public void testUpdateRows() {
+        assertUpdated(new DefaultRowContainer());
+        assertUpdated(new HtmlRowContainer(null));
+    }
+
+    private void assertRendered(RowContainer rowContainer) {
+        ContentPanel contentPanel = createContentPanel(rowContainer);
+        try {
+            contentPanel.updateContent(createRows(ROWS, "a"));
+            assertEquals(rowContainer.getClass().getName(),
+                    expectedRows(ROWS, "a"), readRows(contentPanel));
+        } finally {
+            RootPanel.get().remove(contentPanel);
+        }
+    }
+
+    /*
+     * Recycled rows show the new values and extra rows are removed.
+     */
+    private void assertUpdated(RowContainer rowContainer) {
+        ContentPanel contentPanel = createContentPanel(rowContainer);
+        try {
+            contentPanel.updateContent(createRows(ROWS, "a"));
+            contentPanel.updateContent(createRows(ROWS / 2, "b"));
+            assertEquals(rowContainer.getClass().getName(),
+                    expectedRows(ROWS / 2, "b"), readRows(contentPanel));
+        } finally {
+            RootPanel.get().remove(contentPanel);
+        }
+    }
+
+    private ContentPanel createContentPanel(RowContainer rowContainer) {
+        ContentPanel contentPanel = new ContentPanel(rowContainer,
+                new TestScrollHandler(), true);
+        contentPanel.setHeaderContainer(new HeaderPanel() {
+            @Override
+            public int getColumnCount() {
+                return COLUMNS;
+            }
+        });
+        contentPanel.setHeight(600);
+        RootPanel.get().add(contentPanel);
+        contentPanel.initContent(ROWS);
+        return contentPanel;
+    }
+
+    private List<UIDL> createRows(int count, String prefix) {
+        List<UIDL> rows = new ArrayList<UIDL>(count);
+        for (int i = 0; i < count; i++) {
+            rows.add(createRow(i, prefix + i + "/", COLUMNS));
+        }
+        return rows;
+    }
+
+    private String expectedRows(int count, String prefix) {
+        StringBuilder text = new StringBuilder();
+        for (int r = 0; r < count; r++) {
+            if (r > 0) {
+                text.append('\n');
+            }
+            for (int c = 0; c < COLUMNS; c++) {
+                if (c > 0) {
+                    text.append('|');
+                }
+                text.append(prefix).append(r).append('/').append(c);
+            }
+        }
+        return text.toString();
+    }
+
+    /*
+     * Returns the texts of the rendered cells, cells separated by '|' and rows
+     * by a line break.
+     */
+    private String readRows(ContentPanel contentPanel) {
+        return readRows(contentPanel.getElement(), "."
+                + StyleHeightMeasurer.ROW_STYLE, "." + Cell.primaryStyleName);
+    }
+
+    private static native String readRows(Element element, String rowSelector,
+            String cellSelector)
+    /*-{
+        var rows = element.querySelectorAll(rowSelector);
+        var text = [];
+        for (var r = 0; r < rows.length; r++) {
+            var cells = rows[r].querySelectorAll(cellSelector);
+            var values = [];
+            for (var c = 0; c < cells.length; c++) {
+                values.push(cells[c].textContent);
+            }
+            text.push(values.join("|"));
+        }
+        return text.join("\n");
+    }-*/;
+
+    private static native UIDL createRow(int index, String valuePrefix,
+            int columns)
+    /*-{
+        var attributes = {};
+        attributes[@org.vaadin.tltv.multiscrolltable.client.ui.VCustomScrollTable::ATTR_INDEX] = index;
+        attributes[@org.vaadin.tltv.multiscrolltable.client.ui.VCustomScrollTable::ATTR_KEY] = "" + index;
+        attributes[@org.vaadin.tltv.multiscrolltable.client.ui.VCustomScrollTable::ATTR_DEPTH] = 0;
+        attributes[@org.vaadin.tltv.multiscrolltable.client.ui.VCustomScrollTable::ATTR_CHILDRENS_ALLOWED] = false;
+        attributes[@org.vaadin.tltv.multiscrolltable.client.ui.VCustomScrollTable::ATTR_OPEN] = false;
+        var row = [@org.vaadin.tltv.multiscrolltable.client.ui.VCustomScrollTable::TAG_TR, attributes];
+        for (var i = 0; i < columns; i++) {
+            row.push([@org.vaadin.tltv.multiscrolltable.client.ui.VCustomScrollTable::TAG_VALUE, {}, valuePrefix + i]);
+        }
+        return row;
+    }-*/;
+
+    private static class TestScrollHandler implements ScrollHandlerWidget {
+
+        private final Map<String, Integer> columnWidthModel = new HashMap<String, Integer>();
+        private final ValueDictionary valueDictionary = new ValueDictionary();
+
+        @Override
+        public void scrollContent(ScrollableContent sc,
+                int horizontalScrollPosition, int verticalScrollPosition,
+                boolean forceReset, boolean silentScroll) {
+        }
+
+        @Override
+        public boolean isHorizontalScrollbarVisible() {
+            return false;
+        }
+
+        @Override
+        public boolean isVerticalScrollbarVisible() {
+            return true;
+        }
+
+        @Override
+        public int getBufferSize() {
+            return 0;
+        }
+
+        @Override
+        public Map<String, Integer> getColumnWidthModel() {
+            return columnWidthModel;
+        }
+
+        @Override
+        public void columnWidthModelChanged(
+                Map<String, Integer> changedWidths) {
+        }
+
+        @Override
+        public ValueDictionary getValueDictionary() {
+            return valueDictionary;
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package org.vaadin.tltv.multiscrolltable.client.ui;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class ScrollScalerTest {
+
+    static final int VIEWPORT = 500;
+    static final int LOGICAL_HEIGHT = 10000000;
+    static final int LOGICAL_MAX = LOGICAL_HEIGHT - VIEWPORT;
+    static final int PHYSICAL_MAX = ScrollScaler.MAX_PHYSICAL_HEIGHT - VIEWPORT;
+
+    private ScrollScaler scaler;
+
+    @Before
+    public void setUp() {
+        scaler = new ScrollScaler();
+        scaler.setLogicalHeight(LOGICAL_HEIGHT);
+    }
+
+    @Test
+    public void testSetLogicalHeight_NotScaled() {
+        scaler.setLogicalHeight(5000);
+        assertFalse(scaler.isScaled());
+        assertEquals(5000, scaler.getPhysicalHeight());
+        assertEquals(1234, scaler.toLogical(1234, VIEWPORT));
+        assertEquals(1234, scaler.toPhysical(1234, VIEWPORT));
+        assertEquals(0, scaler.getOffset());
+    }
+
+    @Test
+    public void testSetLogicalHeight_Scaled() {
+        assertTrue(scaler.isScaled());
+        assertEquals(LOGICAL_HEIGHT, scaler.getLogicalHeight());
+        assertEquals(ScrollScaler.MAX_PHYSICAL_HEIGHT,
+                scaler.getPhysicalHeight());
+    }
+
+    @Test
+    public void testSetLogicalHeight_OverIntRangeIsCapped() {
+        // 200M rows of 30px
+        scaler.setLogicalHeight(200000000L * 30);
+        assertEquals(ScrollScaler.MAX_LOGICAL_HEIGHT,
+                scaler.getLogicalHeight());
+        assertEquals(ScrollScaler.MAX_PHYSICAL_HEIGHT,
+                scaler.getPhysicalHeight());
+        assertEquals(ScrollScaler.MAX_LOGICAL_HEIGHT - VIEWPORT,
+                scaler.toLogical(PHYSICAL_MAX, VIEWPORT));
+    }
+
+    @Test
+    public void testToLogical_DoesNotChangeState() {
+        assertEquals(LOGICAL_MAX / 2,
+                scaler.toLogical(PHYSICAL_MAX / 2, VIEWPORT));
+        assertEquals(0, scaler.getOffset());
+        assertEquals(100, scaler.toLogical(100, VIEWPORT));
+    }
+
+    @Test
+    public void testUpdate_JumpIsProportional() {
+        assertEquals(LOGICAL_MAX / 2,
+                scaler.update(PHYSICAL_MAX / 2, VIEWPORT));
+        assertEquals(LOGICAL_MAX / 2 - PHYSICAL_MAX / 2, scaler.getOffset());
+    }
+
+    @Test
+    public void testUpdate_SmallStepKeepsOffset() {
+        scaler.update(PHYSICAL_MAX / 2, VIEWPORT);
+        int offset = scaler.getOffset();
+
+        assertEquals(LOGICAL_MAX / 2 + 50,
+                scaler.update(PHYSICAL_MAX / 2 + 50, VIEWPORT));
+        assertEquals(offset, scaler.getOffset());
+        assertEquals(LOGICAL_MAX / 2 + 50 - VIEWPORT,
+                scaler.update(PHYSICAL_MAX / 2 + 50 - VIEWPORT, VIEWPORT));
+        assertEquals(offset, scaler.getOffset());
+    }
+
+    @Test
+    public void testUpdate_JumpToEnds() {
+        assertEquals(LOGICAL_MAX, scaler.update(PHYSICAL_MAX, VIEWPORT));
+        // Wheel step up from the bottom moves pixel by pixel
+        assertEquals(LOGICAL_MAX - 50,
+                scaler.update(PHYSICAL_MAX - 50, VIEWPORT));
+        assertFalse(scaler.isAtPhysicalEndOnly(PHYSICAL_MAX - 50, VIEWPORT));
+
+        assertEquals(0, scaler.update(0, VIEWPORT));
+        assertEquals(0, scaler.getOffset());
+        assertFalse(scaler.isAtPhysicalEndOnly(0, VIEWPORT));
+    }
+
+    @Test
+    public void testUpdate_StepToPhysicalEndMovesOneStep() {
+        int logical = scaler.update(1000, VIEWPORT);
+        assertEquals(logical - 400, scaler.update(600, VIEWPORT));
+        assertEquals(logical - 800, scaler.update(200, VIEWPORT));
+        // Top of the scroll bar is not the top of the content
+        assertEquals(logical - 1000, scaler.update(0, VIEWPORT));
+        assertTrue(scaler.isAtPhysicalEndOnly(0, VIEWPORT));
+
+        // Scroll bar is moved off the end and steps continue from there
+        int physical = scaler.toPhysical(logical - 1000, VIEWPORT);
+        assertTrue(physical > 0);
+        assertEquals(logical - 1000, scaler.update(physical, VIEWPORT));
+        assertEquals(logical - 1050, scaler.update(physical - 50, VIEWPORT));
+    }
+
+    @Test
+    public void testToPhysical_JumpIsProportional() {
+        assertEquals(PHYSICAL_MAX / 4,
+                scaler.toPhysical(LOGICAL_MAX / 4, VIEWPORT));
+        assertEquals(LOGICAL_MAX / 4 - PHYSICAL_MAX / 4, scaler.getOffset());
+    }
+
+    @Test
+    public void testToPhysical_Ends() {
+        assertEquals(0, scaler.toPhysical(0, VIEWPORT));
+        assertEquals(PHYSICAL_MAX, scaler.toPhysical(LOGICAL_MAX, VIEWPORT));
+        assertEquals(LOGICAL_MAX - PHYSICAL_MAX, scaler.getOffset());
+    }
+
+    @Test
+    public void testToPhysical_RoundTripWithOffset() {
+        scaler.update(PHYSICAL_MAX / 2, VIEWPORT);
+        int offset = scaler.getOffset();
+        int logical = LOGICAL_MAX / 2 + 50;
+
+        int physical = scaler.toPhysical(logical, VIEWPORT);
+        assertEquals(logical - offset, physical);
+        assertEquals(offset, scaler.getOffset());
+        assertEquals(logical, scaler.toLogical(physical, VIEWPORT));
+    }
+
+    @Test
+    public void testToLogicalMax() {
+        assertEquals(LOGICAL_MAX, scaler.toLogicalMax(PHYSICAL_MAX));
+    }
+}
@@ -2,10 +2,36 @@ package org.vaadin.tltv.multiscrolltable.demo;
 
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
-
+import static org.vaadin.tltv.multiscrolltable.client.ui.VCustomScrollTable.ATTR_CACHED;
+import static org.vaadin.tltv.multiscrolltable.client.ui.VCustomScrollTable.ATTR_CHECK_SPACE_AVAILABLE;
+import static org.vaadin.tltv.multiscrolltable.client.ui.VCustomScrollTable.ATTR_DECIMAL_SEPARATOR;
+import static org.vaadin.tltv.multiscrolltable.client.ui.VCustomScrollTable.ATTR_DICTIONARY;
+import static org.vaadin.tltv.multiscrolltable.client.ui.VCustomScrollTable.ATTR_DICTIONARY_INDEX;
+import static org.vaadin.tltv.multiscrolltable.client.ui.VCustomScrollTable.ATTR_DICTIONARY_OFFSET;
+import static org.vaadin.tltv.multiscrolltable.client.ui.VCustomScrollTable.ATTR_EXPAND_RATIO;
+import static org.vaadin.tltv.multiscrolltable.client.ui.VCustomScrollTable.ATTR_GROUPING_SEPARATOR;
+import static org.vaadin.tltv.multiscrolltable.client.ui.VCustomScrollTable.ATTR_LEVELS;
+import static org.vaadin.tltv.multiscrolltable.client.ui.VCustomScrollTable.ATTR_RENDERER;
+import static org.vaadin.tltv.multiscrolltable.client.ui.VCustomScrollTable.ATTR_ROWS;
+import static org.vaadin.tltv.multiscrolltable.client.ui.VCustomScrollTable.ATTR_ROWSPAN;
+import static org.vaadin.tltv.multiscrolltable.client.ui.VCustomScrollTable.ATTR_ROW_STRUCTURE_CHANGED;
+import static org.vaadin.tltv.multiscrolltable.client.ui.VCustomScrollTable.ATTR_TRUNCATED;
+import static org.vaadin.tltv.multiscrolltable.client.ui.VCustomScrollTable.ATTR_WIDTH;
+import static org.vaadin.tltv.multiscrolltable.client.ui.VCustomScrollTable.TAG_COLUMNS;
+import static org.vaadin.tltv.multiscrolltable.client.ui.VCustomScrollTable.TAG_HEADER_CELL;
+import static org.vaadin.tltv.multiscrolltable.client.ui.VCustomScrollTable.TAG_ROWS;
+import static org.vaadin.tltv.multiscrolltable.client.ui.VCustomScrollTable.TAG_VALUE;
+
+import java.text.DecimalFormatSymbols;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 
 import org.jmock.Expectations;
 import org.jmock.Mockery;
@@ -13,11 +39,16 @@ import org.jmock.integration.junit4.JUnit4Mockery;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
+import org.vaadin.tltv.multiscrolltable.client.MultiScrollTableServerRpc;
+import org.vaadin.tltv.multiscrolltable.client.ui.CellRendererRegistry;
 import org.vaadin.tltv.multiscrolltable.ui.Column;
 import org.vaadin.tltv.multiscrolltable.ui.ColumnGroup;
 import org.vaadin.tltv.multiscrolltable.ui.CustomScrollTable;
+import org.vaadin.tltv.multiscrolltable.ui.HierarchicalColumnGroup;
+import org.vaadin.tltv.multiscrolltable.ui.PaintMetrics;
 import org.vaadin.tltv.multiscrolltable.ui.ScrollContent;
 
+import com.vaadin.server.KeyMapper;
 import com.vaadin.server.PaintException;
 import com.vaadin.server.PaintTarget;
 
@@ -31,6 +62,7 @@ public class CustomScrollTableTest {
 
     String prop1 = "test prop 1";
     String prop2 = "test prop 2";
+    String prop3 = "test prop 3";
 
     @Before
     public void setUp() {
@@ -98,6 +130,75 @@ public class CustomScrollTableTest {
         assertArrayEquals(visibleCols.toArray(), table.getVisibleColumns());
     }
 
+    @Test
+    public void testSetVisibleColumns_Unchanged_KeepsPageBuffer()
+            throws PaintException {
+        addTestPropertiesAndVisibleColumns();
+        addTestItems();
+        mockery.checking(new Expectations() {
+            {
+                ignoring(paintTarget);
+            }
+        });
+        table.paintContent(paintTarget);
+        Object buffer = getPageBuffer();
+        assertNotNull(buffer);
+
+        table.setVisibleColumns(Arrays.asList(prop1, prop2));
+        assertSame(buffer, getPageBuffer());
+    }
+
+    @Test
+    public void testSetVisibleColumns_AddAndMove_ReusesPageBufferColumns()
+            throws PaintException {
+        table.getContainerDataSource().addContainerProperty(prop1,
+                String.class, null);
+        table.getContainerDataSource().addContainerProperty(prop2,
+                String.class, null);
+        table.getContainerDataSource().addContainerProperty(prop3,
+                String.class, null);
+        table.setVisibleColumns(Arrays.asList(prop1, prop2));
+        addTestItems();
+        mockery.checking(new Expectations() {
+            {
+                ignoring(paintTarget);
+            }
+        });
+        table.paintContent(paintTarget);
+        Object[][] buffer = (Object[][]) getPageBuffer();
+        assertEquals(3, buffer.length);
+
+        table.setVisibleColumns(Arrays.asList(prop3, prop2, prop1));
+        Object[][] newBuffer = (Object[][]) getPageBuffer();
+        assertNotNull(newBuffer);
+        assertEquals(4, newBuffer.length);
+        assertSame(buffer[0], newBuffer[0]);
+        assertSame(buffer[2], newBuffer[2]);
+        assertSame(buffer[1], newBuffer[3]);
+        assertEquals(2, newBuffer[1].length);
+        assertArrayEquals(new Object[] { prop3, prop2, prop1 },
+                table.getVisibleColumns());
+    }
+
+    @Test
+    public void testSetLightweightRows() {
+        assertFalse(table.isLightweightRows());
+        table.setLightweightRows(true);
+        assertTrue(table.isLightweightRows());
+    }
+
+    @Test
+    public void testSetMaxScrollRequestsPerSecond() {
+        assertEquals(10, table.getMaxScrollRequestsPerSecond());
+        table.setMaxScrollRequestsPerSecond(4);
+        assertEquals(4, table.getMaxScrollRequestsPerSecond());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSetMaxScrollRequestsPerSecond_NotPositive_Fail() {
+        table.setMaxScrollRequestsPerSecond(0);
+    }
+
     @Test
     public void testAddNewScrollContent() {
         assertTrue(table.getScrollContents().size() == 0);
@@ -153,9 +254,9 @@ public class CustomScrollTableTest {
         assertTrue(getPageBuffer() == null);
         assertEquals(0, table.size());
 
-        table.paintContent(paintTarget); // First paint
+        table.paintContent(paintTarget); // First paint, rows are painted too
         assertTrue(!isMeasureSpaceForRowsAvailable());
-        assertTrue(isRowStructureChanged());
+        assertTrue(!isRowStructureChanged());
         assertTrue(getPageBuffer() != null);
         assertEquals(0, table.size());
 
@@ -166,6 +267,136 @@ public class CustomScrollTableTest {
         assertEquals(0, table.size());
     }
 
+    @Test
+    public void testPaintContent_HeaderNotRepainted() throws PaintException {
+        addTestPropertiesAndVisibleColumns();
+        final PaintTarget secondTarget = mockery.mock(PaintTarget.class,
+                "secondTarget");
+        mockery.checking(new Expectations() {
+            {
+                ignoring(paintTarget);
+                never(secondTarget).startTag(TAG_COLUMNS);
+                never(secondTarget).startTag(TAG_HEADER_CELL);
+                ignoring(secondTarget);
+            }
+        });
+        table.paintContent(paintTarget); // First paint
+        table.paintContent(secondTarget); // Second paint
+    }
+
+    @Test
+    public void testPaintContent_ColumnCaptionChanged() throws PaintException {
+        addTestPropertiesAndVisibleColumns();
+        ScrollContent sc = new ScrollContent();
+        ColumnGroup cg = new ColumnGroup();
+        Column column = new Column(prop1);
+        cg.addColumn(column);
+        cg.addColumn(new Column(prop2));
+        sc.addColumnGroup(cg);
+        table.addScrollContent(sc);
+
+        final PaintTarget secondTarget = mockery.mock(PaintTarget.class,
+                "secondTarget");
+        mockery.checking(new Expectations() {
+            {
+                ignoring(paintTarget);
+                never(secondTarget).startTag(TAG_COLUMNS);
+                oneOf(secondTarget).startTag(TAG_HEADER_CELL);
+                ignoring(secondTarget);
+            }
+        });
+        table.paintContent(paintTarget); // First paint
+        column.setCaption("New caption");
+        table.paintContent(secondTarget); // Second paint
+    }
+
+    @Test
+    public void testPaintContent_ColumnWidthChanged() throws PaintException {
+        addTestPropertiesAndVisibleColumns();
+        ScrollContent sc = new ScrollContent();
+        ColumnGroup cg = new ColumnGroup();
+        Column column = new Column(prop1);
+        column.setWidth(100);
+        Column expandingColumn = new Column(prop2);
+        cg.addColumn(column);
+        cg.addColumn(expandingColumn);
+        sc.addColumnGroup(cg);
+        table.addScrollContent(sc);
+
+        final PaintTarget secondTarget = mockery.mock(PaintTarget.class,
+                "secondTarget");
+        mockery.checking(new Expectations() {
+            {
+                oneOf(paintTarget).addAttribute(ATTR_WIDTH, 100);
+                ignoring(paintTarget);
+                // Only the changed column is patched, rows are kept
+                never(secondTarget).startTag(TAG_COLUMNS);
+                never(secondTarget).addAttribute(ATTR_ROW_STRUCTURE_CHANGED,
+                        true);
+                oneOf(secondTarget).startTag(TAG_HEADER_CELL);
+                oneOf(secondTarget).addAttribute(ATTR_WIDTH, -1);
+                oneOf(secondTarget).addAttribute(ATTR_EXPAND_RATIO, 1f);
+                ignoring(secondTarget);
+            }
+        });
+        table.paintContent(paintTarget); // First paint
+        expandingColumn.setExpandRatio(1f);
+        table.paintContent(secondTarget); // Second paint
+    }
+
+    @Test
+    public void testPaintContent_HierarchicalHeaderSpans()
+            throws PaintException {
+        addTestPropertiesAndVisibleColumns();
+        ScrollContent sc = new ScrollContent();
+        HierarchicalColumnGroup hcg = new HierarchicalColumnGroup();
+        ColumnGroup subCg = new ColumnGroup();
+        subCg.addColumn(new Column(prop1));
+        hcg.addColumnGroup(subCg);
+        ColumnGroup cg = new ColumnGroup();
+        cg.addColumn(new Column(prop2));
+        sc.addColumnGroup(hcg);
+        sc.addColumnGroup(cg);
+        table.addScrollContent(sc);
+
+        mockery.checking(new Expectations() {
+            {
+                // Two group rows and a row for the columns. Group without
+                // sub groups spans down to the columns.
+                oneOf(paintTarget).addAttribute(ATTR_LEVELS, 3);
+                oneOf(paintTarget).addAttribute(ATTR_ROWSPAN, 2);
+                ignoring(paintTarget);
+            }
+        });
+        table.paintContent(paintTarget);
+    }
+
+    @Test
+    public void testPaintContent_EstimatedVisibleRowCount()
+            throws PaintException {
+        addTestPropertiesAndVisibleColumns();
+        addTestItems();
+        table.setHeight("200px");
+        table.setEstimatedRowHeight(20);
+
+        mockery.checking(new Expectations() {
+            {
+                // Rows are painted on the first paint with an estimated count
+                oneOf(paintTarget).addAttribute(ATTR_ROWS, 10);
+                oneOf(paintTarget).addAttribute(ATTR_CHECK_SPACE_AVAILABLE,
+                        true);
+                oneOf(paintTarget).startTag(TAG_ROWS);
+                ignoring(paintTarget);
+            }
+        });
+        table.paintContent(paintTarget);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSetEstimatedRowHeight_NotPositive_Fail() {
+        table.setEstimatedRowHeight(0);
+    }
+
     @Test
     public void testAddNewItems() throws PaintException {
         addTestPropertiesAndVisibleColumns();
@@ -176,7 +407,7 @@ public class CustomScrollTableTest {
         });
         table.paintContent(paintTarget); // First paint
         assertTrue(!isMeasureSpaceForRowsAvailable());
-        assertTrue(isRowStructureChanged());
+        assertTrue(!isRowStructureChanged());
         assertTrue(getPageBuffer() != null);
         assertEquals(0, table.size());
 
@@ -186,13 +417,281 @@ public class CustomScrollTableTest {
         assertTrue(getPageBuffer() == null);
         assertEquals(2, table.size());
 
-        table.paintContent(paintTarget); // Second paint, first with rows
+        table.paintContent(paintTarget); // Second paint, first with items
         assertTrue(!isMeasureSpaceForRowsAvailable());
         assertTrue(!isRowStructureChanged());
         assertTrue(getPageBuffer() != null);
         assertEquals(2, table.size());
     }
 
+    @Test
+    public void testAddNewItems_DataVersionChanged() {
+        addTestPropertiesAndVisibleColumns();
+        int version = getDataVersion();
+        addTestItems();
+        // Rows cached by the client are invalidated
+        assertTrue(getDataVersion() > version);
+    }
+
+    @Test
+    public void testPaintContent_RowKeysKeptForCachedRows()
+            throws PaintException {
+        addTestPropertiesAndVisibleColumns();
+        for (int i = 0; i < 30; i++) {
+            table.getContainerDataSource().addItem(i);
+        }
+        table.setHeight("200px");
+        table.setEstimatedRowHeight(20);
+        mockery.checking(new Expectations() {
+            {
+                ignoring(paintTarget);
+            }
+        });
+        table.paintContent(paintTarget); // Rows 0-14
+        @SuppressWarnings("unchecked")
+        KeyMapper<Object> rowKeyMap = (KeyMapper<Object>) ObjectUtils
+                .getFieldValue(table, "rowKeyMap");
+        String key = rowKeyMap.key(0);
+
+        MultiScrollTableServerRpc rpc = (MultiScrollTableServerRpc) ObjectUtils
+                .getFieldValue(table, "rpc");
+        rpc.updateFirstRowIndexAndVisibleRowCount(20, 1, 1);
+        table.paintContent(paintTarget); // Row 0 is not painted
+        // Client may render row 0 from its cache and refer to it by the key
+        assertEquals(Integer.valueOf(0), rowKeyMap.get(key));
+
+        table.getContainerDataSource().addItem(30);
+        table.paintContent(paintTarget);
+        // Cached rows of the old data version are not used anymore
+        assertNull(rowKeyMap.get(key));
+    }
+
+    @Test
+    public void testValueChange_CachedRowsKept() throws PaintException {
+        addTestPropertiesAndVisibleColumns();
+        addTestItems();
+        mockery.checking(new Expectations() {
+            {
+                ignoring(paintTarget);
+            }
+        });
+        table.paintContent(paintTarget);
+        int version = getDataVersion();
+        table.getContainerDataSource().getContainerProperty("1", prop1)
+                .setValue("changed");
+        // Painted row is painted again, cached rows of the client stay valid
+        assertEquals(version, getDataVersion());
+        assertTrue(getPageBuffer() == null);
+    }
+
+    @Test
+    public void testRowRequest_OutdatedSequenceIgnored() {
+        MultiScrollTableServerRpc rpc = (MultiScrollTableServerRpc) ObjectUtils
+                .getFieldValue(table, "rpc");
+        rpc.updateVisibleRowCount(10, 25, 2);
+        rpc.updateVisibleRowCount(20, 25, 1); // Older request
+        assertEquals(10, ObjectUtils.getFieldValue(table,
+                "requestedRowsToPaint"));
+    }
+
+    @Test
+    public void testVisibleRowCountChanged_OnlyMissingRowsPainted()
+            throws PaintException {
+        addTestPropertiesAndVisibleColumns();
+        addTestItems();
+        final PaintTarget secondTarget = mockery.mock(PaintTarget.class,
+                "secondTarget");
+        mockery.checking(new Expectations() {
+            {
+                ignoring(paintTarget);
+                // Both items were painted already, rows are not rebuilt
+                exactly(2).of(secondTarget).addAttribute(ATTR_CACHED, true);
+                never(secondTarget).addAttribute(ATTR_ROW_STRUCTURE_CHANGED,
+                        true);
+                never(secondTarget).startTag(TAG_VALUE);
+                ignoring(secondTarget);
+            }
+        });
+        table.paintContent(paintTarget); // First paint
+        MultiScrollTableServerRpc rpc = (MultiScrollTableServerRpc) ObjectUtils
+                .getFieldValue(table, "rpc");
+        rpc.updateVisibleRowCount(10, 25, 1);
+        table.paintContent(secondTarget);
+    }
+
+    @Test
+    public void testSetColumnWidths() {
+        addTestPropertiesAndVisibleColumns();
+        int version = table.getState().columnWidthsVersion;
+        table.setColumnWidths(Collections.singletonMap(prop1, 100));
+        assertEquals(Integer.valueOf(100), table.getColumnWidths().get(prop1));
+        assertEquals(1, table.getState().columnWidths.size());
+        assertEquals(version + 1, table.getState().columnWidthsVersion);
+
+        table.setColumnWidths(null);
+        assertTrue(table.getColumnWidths().isEmpty());
+        assertTrue(table.getState().columnWidths.isEmpty());
+        assertEquals(version + 2, table.getState().columnWidthsVersion);
+    }
+
+    @Test
+    public void testUpdateColumnWidths_MeasuredByClient() {
+        addTestPropertiesAndVisibleColumns();
+        KeyMapper columnIdMap = (KeyMapper) ObjectUtils.getFieldValue(table,
+                "columnIdMap");
+        String key = columnIdMap.key(prop1);
+        MultiScrollTableServerRpc rpc = (MultiScrollTableServerRpc) ObjectUtils
+                .getFieldValue(table, "rpc");
+        int version = table.getState().columnWidthsVersion;
+        rpc.updateColumnWidths(Collections.singletonMap(key, 120));
+        assertEquals(Integer.valueOf(120), table.getColumnWidths().get(prop1));
+        // Client report is not echoed back in the state
+        assertNull(table.getState().columnWidths.get(key));
+        assertEquals(version, table.getState().columnWidthsVersion);
+    }
+
+    @Test
+    public void testPaintContent_ClientSideNumberFormatting()
+            throws PaintException {
+        table.getContainerDataSource().addContainerProperty(prop3,
+                Double.class, null);
+        table.setVisibleColumns(Arrays.<Object> asList(prop3));
+        table.getContainerDataSource().addItem("1");
+        table.getContainerDataSource().getContainerProperty("1", prop3)
+                .setValue(1234567.5);
+        table.setClientSideNumberFormatting(true);
+
+        mockery.checking(new Expectations() {
+            {
+                // Number is sent raw with the column's pattern
+                oneOf(paintTarget).addAttribute(ATTR_DECIMAL_SEPARATOR,
+                        String.valueOf(new DecimalFormatSymbols()
+                                .getDecimalSeparator()));
+                oneOf(paintTarget).addAttribute(ATTR_GROUPING_SEPARATOR, " ");
+                oneOf(paintTarget).addText("1234567.5");
+                ignoring(paintTarget);
+            }
+        });
+        table.paintContent(paintTarget);
+    }
+
+    @Test
+    public void testPaintContent_ColumnRenderer() throws PaintException {
+        table.getContainerDataSource().addContainerProperty(prop3,
+                Boolean.class, null);
+        table.setVisibleColumns(Arrays.<Object> asList(prop3));
+        table.getContainerDataSource().addItem("1");
+        table.getContainerDataSource().getContainerProperty("1", prop3)
+                .setValue(Boolean.TRUE);
+        table.setColumnRenderer(prop3, CellRendererRegistry.BOOLEAN);
+
+        mockery.checking(new Expectations() {
+            {
+                // Raw value is sent with the renderer's name
+                oneOf(paintTarget).addAttribute(ATTR_RENDERER,
+                        CellRendererRegistry.BOOLEAN);
+                oneOf(paintTarget).addText("true");
+                ignoring(paintTarget);
+            }
+        });
+        table.paintContent(paintTarget);
+        assertEquals(CellRendererRegistry.BOOLEAN,
+                table.getColumnRenderer(prop3));
+    }
+
+    @Test
+    public void testPaintContent_DictionaryEncoding() throws PaintException {
+        table.getContainerDataSource().addContainerProperty(prop3,
+                String.class, null);
+        table.setVisibleColumns(Arrays.<Object> asList(prop3));
+        String[] values = { "EUR", "EUR", "USD" };
+        for (int i = 0; i < values.length; i++) {
+            table.getContainerDataSource().addItem(String.valueOf(i));
+            table.getContainerDataSource()
+                    .getContainerProperty(String.valueOf(i), prop3)
+                    .setValue(values[i]);
+        }
+        table.setDictionaryEncoding(true);
+
+        mockery.checking(new Expectations() {
+            {
+                // Only the repeated value goes to the dictionary
+                oneOf(paintTarget).addAttribute(ATTR_DICTIONARY_OFFSET, 0);
+                oneOf(paintTarget).addAttribute(ATTR_DICTIONARY,
+                        new String[] { "EUR" });
+                exactly(2).of(paintTarget).addAttribute(
+                        ATTR_DICTIONARY_INDEX, 0);
+                oneOf(paintTarget).addText("USD");
+                ignoring(paintTarget);
+            }
+        });
+        table.paintContent(paintTarget);
+
+        PaintMetrics metrics = table.getPaintMetrics();
+        assertEquals(3, metrics.getValueCount());
+        assertEquals(2, metrics.getEncodedValueCount());
+        assertEquals(9, metrics.getRawLength());
+        assertEquals(8, metrics.getEncodedLength());
+        assertEquals(1, metrics.getDictionarySize());
+    }
+
+    @Test
+    public void testSetRowDescriptionPropertyId_FetchedByClient() {
+        addTestPropertiesAndVisibleColumns();
+        assertFalse(table.getState().rowDescriptions);
+        table.setRowDescriptionPropertyId(prop1);
+        assertTrue(table.getState().rowDescriptions);
+        table.setRowDescriptionPropertyId(null);
+        assertFalse(table.getState().rowDescriptions);
+    }
+
+    @Test
+    public void testPaintContent_ColumnMaxTextLength() throws PaintException {
+        table.getContainerDataSource().addContainerProperty(prop3,
+                String.class, null);
+        table.setVisibleColumns(Arrays.<Object> asList(prop3));
+        table.getContainerDataSource().addItem("1");
+        table.getContainerDataSource().getContainerProperty("1", prop3)
+                .setValue("long note text");
+        table.setColumnMaxTextLength(prop3, 4);
+
+        mockery.checking(new Expectations() {
+            {
+                oneOf(paintTarget).addAttribute(ATTR_TRUNCATED, true);
+                oneOf(paintTarget).addText(
+                        "long" + CustomScrollTable.TRUNCATION_INDICATOR);
+                ignoring(paintTarget);
+            }
+        });
+        table.paintContent(paintTarget);
+        assertEquals(4, table.getColumnMaxTextLength(prop3));
+        assertEquals(-1, table.getColumnMaxTextLength(prop1));
+    }
+
+    @Test
+    public void testPaintContent_ColumnMaxTextLength_SurrogatePairAtCut()
+            throws PaintException {
+        table.getContainerDataSource().addContainerProperty(prop3,
+                String.class, null);
+        table.setVisibleColumns(Arrays.<Object> asList(prop3));
+        table.getContainerDataSource().addItem("1");
+        // Cut point falls between the two halves of the smiley
+        table.getContainerDataSource().getContainerProperty("1", prop3)
+                .setValue("abc\uD83D\uDE00def");
+        table.setColumnMaxTextLength(prop3, 4);
+
+        mockery.checking(new Expectations() {
+            {
+                // Cut text is as long as the limit, still marked truncated
+                oneOf(paintTarget).addAttribute(ATTR_TRUNCATED, true);
+                oneOf(paintTarget).addText(
+                        "abc" + CustomScrollTable.TRUNCATION_INDICATOR);
+                ignoring(paintTarget);
+            }
+        });
+        table.paintContent(paintTarget);
+    }
+
     @Test
     public void testRemoveNewItems() throws PaintException {
         addTestPropertiesAndVisibleColumns();
@@ -224,6 +723,10 @@ public class CustomScrollTableTest {
                 "measureSpaceForRowsAvailable");
     }
 
+    private int getDataVersion() {
+        return (Integer) ObjectUtils.getFieldValue(table, "dataVersion");
+    }
+
     private boolean isRowStructureChanged() {
         return (Boolean) ObjectUtils
                 .getFieldValue(table, "rowStructureChanged");